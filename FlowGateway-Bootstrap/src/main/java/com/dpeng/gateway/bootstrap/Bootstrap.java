@@ -2,10 +2,12 @@ package com.dpeng.gateway.bootstrap;
 
 import com.dpeng.gateway.config.config.Config;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
+import com.dpeng.gateway.config.config.manager.RouteDiff;
 import com.dpeng.gateway.config.loader.ConfigLoader;
-import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.service.ConfigCenterProcessor;
 import com.dpeng.gateway.core.config.Container;
+import com.dpeng.gateway.core.filter.flow.cluster.QuotaCoordinatorManager;
+import com.dpeng.gateway.core.helper.MetricsHelper;
 import com.dpeng.gateway.register.service.RegisterCenterProcessor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -49,11 +51,11 @@ public class Bootstrap {
             return new RuntimeException("not found ConfigCenter impl");
         });
         configCenterProcessor.init(config.getConfigCenter());
+        // 只通知发生变化的路由，未变化的服务保留运行时状态
         configCenterProcessor.subscribeRoutesChange(newRoutes -> {
-            DynamicConfigManager.getInstance().updateRoutes(newRoutes, true);
-            for (RouteDefinition newRoute : newRoutes) {
-                DynamicConfigManager.getInstance().changeRoute(newRoute);
-            }
+            RouteDiff diff = DynamicConfigManager.getInstance().applyRoutes(newRoutes);
+            // 删除的路由 (包括没有配置id、每次推送id都会变化的路由) 不再有请求, 移除按路由id区分的指标
+            diff.getRemoved().forEach(route -> MetricsHelper.removeRouteMetrics(route.getId()));
         });
     }
 
@@ -71,6 +73,9 @@ public class Bootstrap {
             DynamicConfigManager.getInstance().updateService(serviceDefinition);
             DynamicConfigManager.getInstance().updateInstances(serviceDefinition, newInstances);
         }));
+        // 集群限流在配额协调器不可达时按网关节点数平分配额
+        registerCenterProcessor.subscribeGatewayInstances((serviceDefinition, instances) ->
+                QuotaCoordinatorManager.updateFleetSize(instances.size()));
     }
 
     private void registerGracefullyShutdown() {
@@ -22,4 +22,6 @@ public interface FilterConstant {
 
     int ROUTE_FILTER_ORDER = Integer.MAX_VALUE; // 路由过滤器顺序
 
+    int BLOCKING_FILTER_MAX_CONCURRENCY = 256; // 阻塞过滤器默认的最大并发数
+
 }
@@ -0,0 +1,7 @@
+package com.dpeng.gateway.common.constant;
+
+public interface FlowConstant {
+
+    String LOCAL_QUOTA_COORDINATOR = "local_quota_coordinator";
+
+}
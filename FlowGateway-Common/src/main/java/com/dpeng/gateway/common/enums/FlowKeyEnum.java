@@ -0,0 +1,19 @@
+package com.dpeng.gateway.common.enums;
+
+/**
+ * 按键限流时键的来源
+ */
+public enum FlowKeyEnum {
+
+    CLIENT_IP("客户端ip"),
+    HEADER("请求头"),
+    COOKIE("cookie"),
+    PATH_SEGMENT("路径段")
+    ;
+
+    private final String des;
+
+    FlowKeyEnum(String des) {
+        this.des = des;
+    }
+}
@@ -0,0 +1,14 @@
+package com.dpeng.gateway.common.enums;
+
+public enum HttpClientEnum {
+
+    ASYNC_HTTP_CLIENT("async-http-client, 独立的事件循环组"),
+    NETTY("原生 netty 客户端, 复用服务端的事件循环, 每个事件循环一个连接池")
+    ;
+
+    private final String des;
+
+    HttpClientEnum(String des) {
+        this.des = des;
+    }
+}
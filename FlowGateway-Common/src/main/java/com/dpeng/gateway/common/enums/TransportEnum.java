@@ -0,0 +1,16 @@
+package com.dpeng.gateway.common.enums;
+
+public enum TransportEnum {
+
+    AUTO("自动选择, Linux 下优先 epoll, 否则 nio"),
+    IO_URING("io_uring, 不可用时回退到 epoll/nio"),
+    EPOLL("epoll, 不可用时回退到 nio"),
+    NIO("nio")
+    ;
+
+    private final String des;
+
+    TransportEnum(String des) {
+        this.des = des;
+    }
+}
@@ -0,0 +1,14 @@
+package com.dpeng.gateway.common.enums;
+
+public enum UpstreamProtocolEnum {
+
+    HTTP1_1("http/1.1, 每个连接同时只处理一个请求"),
+    H2C("明文 http/2 (prior knowledge), 多个请求复用少量连接, 下游不支持时回退到 http/1.1, 仅原生 netty 客户端生效")
+    ;
+
+    private final String des;
+
+    UpstreamProtocolEnum(String des) {
+        this.des = des;
+    }
+}
@@ -0,0 +1,24 @@
+package com.dpeng.gateway.common.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器, 多线程高频累加
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void inc() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.dpeng.gateway.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 直方图, 按 2 的幂分桶记录非负数值 (如纳秒耗时、数量), 记录时无锁, 分位数为所在桶的上界, 误差在 2 倍以内
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    // 第 i 个桶记录 [2^(i-1), 2^i) 的数值, 第 0 个桶记录 0
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * 近似分位数, quantile 取值 (0, 1]
+     */
+    public long percentile(double quantile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return i == 0 ? 0 : Math.min(getMax(), i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + percentile(0.5)
+                + ", p99=" + percentile(0.99) + ", max=" + getMax();
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.dpeng.gateway.common.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 网关内部指标的注册表, 按名字获取计数器和直方图, 同名指标只创建一次
+ */
+public class MetricRegistry {
+
+    private static final MetricRegistry INSTANCE = new MetricRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private MetricRegistry() {
+    }
+
+    public static MetricRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * 移除指标, 用于按路由等会被删除的对象区分的指标
+     */
+    public void remove(String name) {
+        counters.remove(name);
+        histograms.remove(name);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.dpeng.gateway.common.plugin;
+
+import java.lang.annotation.*;
+
+/**
+ * 标记网关插件 (过滤器、负载均衡策略、灰度策略、降级处理器等)。
+ * 编译时由 FlowGateway-Processor 校验并生成插件注册表和 META-INF/services 文件, 启动时不需要扫描加载。
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GatewayPlugin {
+
+    /**
+     * 插件实现的扩展接口
+     */
+    Class<?> value();
+
+    /**
+     * 插件的唯一标识, 必须与插件 mark() 的返回值一致
+     */
+    String name();
+
+}
@@ -0,0 +1,45 @@
+package com.dpeng.gateway.common.plugin;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 插件加载器, 先从编译时生成的注册表直接构造内置插件, 再通过 ServiceLoader 加载外部插件 jar 中的插件
+ */
+@Slf4j
+public class PluginLoader {
+
+    /**
+     * 加载扩展接口 type 的所有插件, 键为插件标识
+     *
+     * @param registry 编译时生成的注册表
+     * @param mark     取插件标识的方法, 内置插件的标识与注册时不一致时启动失败
+     */
+    public static <T> Map<String, T> load(Class<T> type, PluginRegistry registry, Function<T, String> mark) {
+        Map<String, T> plugins = new LinkedHashMap<>();
+        Set<Class<?>> loaded = new HashSet<>();
+        for (Map.Entry<String, Supplier<?>> entry : registry.plugins(type).entrySet()) {
+            T plugin = type.cast(entry.getValue().get());
+            if (!entry.getKey().equals(mark.apply(plugin))) {
+                throw new IllegalStateException("plugin " + plugin.getClass().getName() + " is registered as "
+                        + entry.getKey() + " but its mark is " + mark.apply(plugin));
+            }
+            plugins.put(entry.getKey(), plugin);
+            loaded.add(plugin.getClass());
+            log.info("load {} success: {}", type.getSimpleName(), plugin);
+        }
+        // 外部插件 jar 没有生成内置注册表, 仍通过 ServiceLoader 加载
+        for (ServiceLoader.Provider<T> provider : ServiceLoader.load(type).stream().toList()) {
+            if (loaded.add(provider.type())) { // 只按类型判断, 内置插件不会被重复实例化
+                T plugin = provider.get();
+                plugins.put(mark.apply(plugin), plugin);
+                log.info("load external {} success: {}", type.getSimpleName(), plugin);
+            }
+        }
+        return plugins;
+    }
+
+}
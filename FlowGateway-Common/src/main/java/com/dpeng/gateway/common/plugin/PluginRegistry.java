@@ -0,0 +1,16 @@
+package com.dpeng.gateway.common.plugin;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 编译时生成的插件注册表, 按扩展接口列出插件的标识和构造方法
+ */
+public interface PluginRegistry {
+
+    /**
+     * 扩展接口 type 的所有插件, 键为插件标识, 按声明顺序排列
+     */
+    Map<String, Supplier<?>> plugins(Class<?> type);
+
+}
@@ -0,0 +1,112 @@
+package com.dpeng.gateway.common.util;
+
+import com.dpeng.gateway.common.enums.TransportEnum;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 网络传输层选择: io_uring、epoll、nio。
+ * io_uring 由 netty-incubator-transport-io_uring 提供, 该依赖不在默认 classpath 中, 因此通过反射加载,
+ * 缺少依赖、内核不支持或 netty 版本不兼容时自动回退到 epoll, 再回退到 nio。
+ */
+@Slf4j
+public class TransportUtil {
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private static final boolean IO_URING_AVAILABLE = detectIoUring();
+
+    private static boolean detectIoUring() {
+        if (!SystemUtil.isLinuxPlatform()) {
+            return false;
+        }
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_PACKAGE + "IOUring");
+            return (boolean) ioUring.getMethod("isAvailable").invoke(null);
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("io_uring transport unavailable", e);
+            return false;
+        }
+    }
+
+    public static boolean isIoUringAvailable() {
+        return IO_URING_AVAILABLE;
+    }
+
+    /**
+     * 按配置和当前环境决定实际使用的传输层
+     */
+    public static TransportEnum resolve(TransportEnum preferred) {
+        TransportEnum transport = preferred == null ? TransportEnum.AUTO : preferred;
+        if (transport == TransportEnum.IO_URING && IO_URING_AVAILABLE) {
+            return TransportEnum.IO_URING;
+        }
+        if (transport != TransportEnum.NIO && SystemUtil.useEpoll()) {
+            return TransportEnum.EPOLL;
+        }
+        return TransportEnum.NIO;
+    }
+
+    /**
+     * 创建事件循环组, transport 需是 resolve 之后的结果, 线程名为 "{transport}-{name}"
+     */
+    public static EventLoopGroup newEventLoopGroup(TransportEnum transport, int nThreads, String name) {
+        switch (transport) {
+            case IO_URING -> {
+                ThreadFactory threadFactory = new DefaultThreadFactory("io_uring-" + name);
+                try {
+                    return (EventLoopGroup) Class.forName(IO_URING_PACKAGE + "IOUringEventLoopGroup")
+                            .getConstructor(int.class, ThreadFactory.class).newInstance(nThreads, threadFactory);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("create io_uring event loop group failed", e);
+                }
+            }
+            case EPOLL -> {
+                return new EpollEventLoopGroup(nThreads, new DefaultThreadFactory("epoll-" + name));
+            }
+            default -> {
+                return new NioEventLoopGroup(nThreads, new DefaultThreadFactory("default-" + name));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Class<? extends ServerChannel> serverChannelClass(TransportEnum transport) {
+        return switch (transport) {
+            case IO_URING -> (Class<? extends ServerChannel>) loadIoUringClass("IOUringServerSocketChannel");
+            case EPOLL -> EpollServerSocketChannel.class;
+            default -> NioServerSocketChannel.class;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Class<? extends SocketChannel> socketChannelClass(TransportEnum transport) {
+        return switch (transport) {
+            case IO_URING -> (Class<? extends SocketChannel>) loadIoUringClass("IOUringSocketChannel");
+            case EPOLL -> EpollSocketChannel.class;
+            default -> NioSocketChannel.class;
+        };
+    }
+
+    private static Class<?> loadIoUringClass(String simpleName) {
+        try {
+            return Class.forName(IO_URING_PACKAGE + simpleName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("io_uring transport class not found: " + simpleName, e);
+        }
+    }
+
+}
@@ -37,4 +37,6 @@ public class    Config {
     // 路由配置
     private List<RouteDefinition> routes = new ArrayList<>();
 
+    private int routeCacheSize = 0; // 路由匹配结果缓存的最大条目数，按访问频率淘汰，0 表示不缓存
+
 }
@@ -1,12 +1,18 @@
 package com.dpeng.gateway.config.config;
 
+import com.dpeng.gateway.common.enums.HttpClientEnum;
+import com.dpeng.gateway.common.enums.TransportEnum;
 import lombok.Data;
 
 @Data
 public class HttpClientConfig {
 
+    private HttpClientEnum type = HttpClientEnum.ASYNC_HTTP_CLIENT; // 客户端实现，NETTY 时复用服务端事件循环，transport 和 eventLoopGroupWorkerNum 不生效
+
     private int eventLoopGroupWorkerNum = Runtime.getRuntime().availableProcessors() * 2; // worker数量
 
+    private TransportEnum transport = TransportEnum.AUTO; // 传输层，async-http-client 不支持 io_uring，配置 IO_URING 时回退到 epoll/nio
+
     private int httpConnectTimeout = 30 * 1000; // 连接超时时间
 
     private int httpRequestTimeout = 30 * 1000; // 请求超时时间
@@ -17,6 +23,18 @@ public class HttpClientConfig {
 
     private int httpConnectionsPerHost = 8000; // 客户端每个地址支持的最大连接数
 
+    private boolean compressionPassThrough = false; // 透传下游的压缩响应，保留 Content-Encoding，响应体不在网关内解压，过滤器需要时再按需解压
+
     private int httpPooledConnectionIdleTimeout = 60 * 1000; // 客户端空闲连接超时时间, 默认60秒
 
+    private int httpMaxIdleConnectionsPerLoop = 64; // 每个事件循环对每个下游地址保留的最大空闲连接数，仅原生 netty 客户端生效
+
+    private int prewarmConnectionsPerLoop = 0; // 发现新实例时每个事件循环预先建立的连接数，0 表示不预热，仅原生 netty 客户端生效
+
+    private int prewarmCheckInterval = 5 * 1000; // 检查并补足预热连接的间隔，单位毫秒
+
+    private int http2MaxConnectionsPerLoop = 4; // 每个事件循环到每个下游地址的最大 h2c 连接数，已有连接的并发流都达到下游上限时才新建
+
+    private int http2FallbackTtl = 10 * 60 * 1000; // 下游不支持 h2c 时回退到 http/1.1 的缓存时间，过期后重新尝试 h2c，单位毫秒
+
 }
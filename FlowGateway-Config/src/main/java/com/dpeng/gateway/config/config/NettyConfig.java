@@ -1,5 +1,6 @@
 package com.dpeng.gateway.config.config;
 
+import com.dpeng.gateway.common.enums.TransportEnum;
 import lombok.Data;
 
 /**
@@ -12,6 +13,18 @@ public class NettyConfig {
 
     private int eventLoopGroupWorkerNum = Runtime.getRuntime().availableProcessors() * 2;
 
+    private TransportEnum transport = TransportEnum.AUTO; // 传输层，IO_URING 不可用时自动回退到 epoll/nio
+
     private int maxContentLength = 64 * 1024 * 1024; // 64MB
 
+    private boolean http2Enabled = false; // 是否开启 HTTP/2 (h2c 升级和 prior-knowledge)，同一端口仍兼容 HTTP/1.1
+
+    private int http2MaxConcurrentStreams = 1024; // 单个 HTTP/2 连接允许的最大并发流数
+
+    private boolean reusePort = false; // 是否开启 SO_REUSEPORT 多 acceptor 模式，仅 epoll 生效，每个 worker 线程绑定一个监听 socket，由内核分发新连接
+
+    private int tcpFastOpen = 0; // TCP_FASTOPEN 队列长度，0 表示不开启，仅 epoll 生效
+
+    private int tcpDeferAccept = 0; // TCP_DEFER_ACCEPT 超时时间，单位秒，连接上有数据到达才唤醒 accept，0 表示不开启，仅 epoll 生效
+
 }
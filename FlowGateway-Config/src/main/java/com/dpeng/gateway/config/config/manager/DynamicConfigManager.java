@@ -1,31 +1,30 @@
 package com.dpeng.gateway.config.config.manager;
 
+import com.dpeng.gateway.common.metrics.MetricRegistry;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 动态配置管理，缓存从配置中心拉取下来的配置
  */
+@Slf4j
 public class DynamicConfigManager {
 
     //单例模式:确保了配置的统一性和一致性
     private static final DynamicConfigManager INSTANCE = new DynamicConfigManager();
     // 路由规则变化监听器
     private final ConcurrentHashMap<String /* 服务名 */, List<RouteListener>> routeListenerMap = new ConcurrentHashMap<>();
-    // 路由id对应的路由
-    private final ConcurrentHashMap<String /* 路由id */, RouteDefinition> routeId2RouteMap = new ConcurrentHashMap<>();
-    // 服务对应的路由
-    private final ConcurrentHashMap<String /* 服务名 */, RouteDefinition> serviceName2RouteMap = new ConcurrentHashMap<>();
-    // URI对应的路由
-    private final ConcurrentHashMap<String /* URI路径 */, RouteDefinition> uri2RouteMap = new ConcurrentHashMap<>();
+    // 服务实例变化监听器
+    private final List<InstanceListener> instanceListeners = new CopyOnWriteArrayList<>();
+    // 路由表快照，整体替换
+    private volatile RouteTable routeTable = RouteTable.EMPTY;
     // 服务
     private final ConcurrentHashMap<String /* 服务名 */, ServiceDefinition> serviceDefinitionMap = new ConcurrentHashMap<>();
     // 服务对应的实例
@@ -41,7 +40,8 @@ public class DynamicConfigManager {
 
     /*********   路由   *********/
     public void updateRouteByRouteId(String id, RouteDefinition routeDefinition) {
-        routeId2RouteMap.put(id, routeDefinition);
+        routeDefinition.setId(id);
+        updateRoutes(List.of(routeDefinition));
     }
 
 
@@ -50,31 +50,54 @@ public class DynamicConfigManager {
         updateRoutes(routes, false);
     }
 
-    public void updateRoutes(Collection<RouteDefinition> routes, boolean clear) {
-        if (routes == null || routes.isEmpty()) return;
-        if (clear) {
-            routeId2RouteMap.clear();
-            serviceName2RouteMap.clear();
-            uri2RouteMap.clear();
-        }
-        for (RouteDefinition route : routes) {
-            if (route == null) continue;
-            routeId2RouteMap.put(route.getId(), route);
-            serviceName2RouteMap.put(route.getServiceName(), route);
-            uri2RouteMap.put(String.valueOf(route.getUri()), route);
+    /**
+     * 新路由表在旁路构建完成后一次性发布，更新之间串行，避免并发更新互相覆盖，返回新旧路由表的差异。
+     * clear 为 true 时 routes 是全量快照，为空表示删除所有路由
+     */
+    public synchronized RouteDiff updateRoutes(Collection<RouteDefinition> routes, boolean clear) {
+        RouteTable oldTable = routeTable;
+        if (routes == null || routes.isEmpty()) {
+            if (!clear) return RouteDiff.between(oldTable, oldTable);
+            routes = List.of();
         }
+        RouteTable newTable = oldTable.with(routes, clear);
+        routeTable = newTable;
+        return RouteDiff.between(oldTable, newTable);
+    }
+
+    /**
+     * 配置中心推送全量路由：发布新路由表，只通知新增、删除、修改过的路由的监听器，
+     * 未变化的服务保留限流计数、熔断窗口等状态
+     */
+    public RouteDiff applyRoutes(Collection<RouteDefinition> routes) {
+        long start = System.nanoTime();
+        RouteDiff diff = updateRoutes(routes, true);
+        diff.getAdded().forEach(this::changeRoute);
+        diff.getModified().forEach(this::changeRoute);
+        diff.getRemoved().forEach(this::changeRoute);
+        long cost = System.nanoTime() - start;
+        MetricRegistry metrics = MetricRegistry.getInstance();
+        metrics.counter("route.update.count").inc();
+        metrics.histogram("route.update.diff.size").record(diff.size());
+        metrics.histogram("route.update.apply.nanos").record(cost);
+        log.info("apply routes version {}, {}, cost {} us", routeTable.getVersion(), diff, cost / 1000);
+        return diff;
+    }
+
+    public RouteTable getRouteTable() {
+        return routeTable;
     }
 
     public RouteDefinition getRouteById(String id) {
-        return routeId2RouteMap.get(id);
+        return routeTable.getRouteById(id);
     }
 
     public RouteDefinition getRouteByServiceName(String serviceName) {
-        return serviceName2RouteMap.get(serviceName);
+        return routeTable.getRouteByServiceName(serviceName);
     }
 
     public Set<Map.Entry<String, RouteDefinition>> getAllUriEntry() {
-        return uri2RouteMap.entrySet();
+        return routeTable.getAllUriEntry();
     }
 
     /*********   服务   *********/
@@ -88,23 +111,31 @@ public class DynamicConfigManager {
 
     /*********   实例   *********/
     public void addServiceInstance(String serviceName, ServiceInstance instance) {
-        serviceInstanceMap.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>()).put(instance.getInstanceId(), instance);
+        ServiceInstance old = serviceInstanceMap.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>()).put(instance.getInstanceId(), instance);
+        if (old == null) {
+            changeInstances(serviceName, List.of(instance), List.of());
+        }
     }
 
     public void updateInstances(ServiceDefinition serviceDefinition, Set<ServiceInstance> newInstances) {
         ConcurrentHashMap<String, ServiceInstance> oldInstancesMap = serviceInstanceMap.computeIfAbsent(serviceDefinition.getServiceName(), k -> new ConcurrentHashMap<>());
+        Map<String, ServiceInstance> removed = new HashMap<>(oldInstancesMap);
+        List<ServiceInstance> added = new ArrayList<>();
         oldInstancesMap.clear();
         for (ServiceInstance newInstance : newInstances) {
             oldInstancesMap.put(newInstance.getInstanceId(), newInstance);
+            if (removed.remove(newInstance.getInstanceId()) == null) {
+                added.add(newInstance);
+            }
         }
+        changeInstances(serviceDefinition.getServiceName(), added, removed.values());
     }
 
     public void removeServiceInstance(String serviceName, ServiceInstance instance) {
-        serviceInstanceMap.compute(serviceName, (k, v) -> {
-            if (v == null || v.get(instance.getInstanceId()) == null) return v;
-            v.remove(instance.getInstanceId());
-            return v;
-        });
+        ConcurrentHashMap<String, ServiceInstance> instances = serviceInstanceMap.get(serviceName);
+        if (instances != null && instances.remove(instance.getInstanceId()) != null) {
+            changeInstances(serviceName, List.of(), List.of(instance));
+        }
     }
 
     public Map<String, ServiceInstance> getInstancesByServiceName(String serviceName) {
@@ -116,6 +147,17 @@ public class DynamicConfigManager {
         routeListenerMap.computeIfAbsent(serviceName, key -> new CopyOnWriteArrayList<>()).add(listener);
     }
 
+    public void addInstanceListener(InstanceListener listener) {
+        instanceListeners.add(listener);
+    }
+
+    private void changeInstances(String serviceName, Collection<ServiceInstance> added, Collection<ServiceInstance> removed) {
+        if (added.isEmpty() && removed.isEmpty()) return;
+        for (InstanceListener instanceListener : instanceListeners) {
+            instanceListener.changeOnInstances(serviceName, added, removed);
+        }
+    }
+
     public void changeRoute(RouteDefinition routeDefinition) {
         List<RouteListener> routeListeners = routeListenerMap.get(routeDefinition.getServiceName());
         if (routeListeners == null || routeListeners.isEmpty()) return;
@@ -0,0 +1,14 @@
+package com.dpeng.gateway.config.config.manager;
+
+import com.dpeng.gateway.config.pojo.ServiceInstance;
+
+import java.util.Collection;
+
+public interface InstanceListener {
+
+    /**
+     * 服务实例集合变化, added 为新增的实例, removed 为下线的实例
+     */
+    void changeOnInstances(String serviceName, Collection<ServiceInstance> added, Collection<ServiceInstance> removed);
+
+}
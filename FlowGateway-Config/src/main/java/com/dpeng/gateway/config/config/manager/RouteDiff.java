@@ -0,0 +1,73 @@
+package com.dpeng.gateway.config.config.manager;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 两个路由表之间的差异，按路由id比较，内容比较使用 RouteDefinition 的 equals（包括过滤器、弹性等全部配置）
+ */
+public final class RouteDiff {
+
+    // 新增的路由
+    private final List<RouteDefinition> added;
+    // 删除的路由（旧路由表中的定义）
+    private final List<RouteDefinition> removed;
+    // 内容变化的路由（新路由表中的定义）
+    private final List<RouteDefinition> modified;
+
+    private RouteDiff(List<RouteDefinition> added, List<RouteDefinition> removed, List<RouteDefinition> modified) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.modified = Collections.unmodifiableList(modified);
+    }
+
+    public static RouteDiff between(RouteTable oldTable, RouteTable newTable) {
+        List<RouteDefinition> added = new ArrayList<>();
+        List<RouteDefinition> removed = new ArrayList<>();
+        List<RouteDefinition> modified = new ArrayList<>();
+        for (RouteDefinition route : newTable.getRoutes()) {
+            RouteDefinition old = oldTable.getRouteById(route.getId());
+            if (old == null) {
+                added.add(route);
+            } else if (!Objects.equals(old, route)) {
+                modified.add(route);
+            }
+        }
+        for (RouteDefinition route : oldTable.getRoutes()) {
+            if (newTable.getRouteById(route.getId()) == null) {
+                removed.add(route);
+            }
+        }
+        return new RouteDiff(added, removed, modified);
+    }
+
+    public List<RouteDefinition> getAdded() {
+        return added;
+    }
+
+    public List<RouteDefinition> getRemoved() {
+        return removed;
+    }
+
+    public List<RouteDefinition> getModified() {
+        return modified;
+    }
+
+    public int size() {
+        return added.size() + removed.size() + modified.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + added.size() + ", removed=" + removed.size() + ", modified=" + modified.size();
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.dpeng.gateway.config.config.manager;
+
+import com.dpeng.gateway.config.helper.RouteMatcher;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 不可变的路由表快照，在旁路完整构建后由 DynamicConfigManager 一次性发布，
+ * 读请求只需一次 volatile 读，不会看到清空或构建了一半的路由表。
+ */
+public final class RouteTable {
+
+    public static final RouteTable EMPTY = new RouteTable(0, Map.of());
+
+    // 版本号，每次发布递增
+    private final long version;
+    // 路由id对应的路由
+    private final Map<String /* 路由id */, RouteDefinition> routeId2RouteMap;
+    // 服务对应的路由
+    private final Map<String /* 服务名 */, RouteDefinition> serviceName2RouteMap;
+    // URI对应的路由
+    private final Map<String /* URI路径 */, RouteDefinition> uri2RouteMap;
+    // Host、请求方法、URI 的路由决策结构
+    private final RouteMatcher routeMatcher;
+
+    private RouteTable(long version, Map<String, RouteDefinition> routeId2RouteMap) {
+        Map<String, RouteDefinition> serviceName2RouteMap = new HashMap<>();
+        Map<String, RouteDefinition> uri2RouteMap = new HashMap<>();
+        for (RouteDefinition route : routeId2RouteMap.values()) {
+            serviceName2RouteMap.put(route.getServiceName(), route);
+            uri2RouteMap.put(String.valueOf(route.getUri()), route);
+        }
+        this.version = version;
+        this.routeId2RouteMap = Collections.unmodifiableMap(routeId2RouteMap);
+        this.serviceName2RouteMap = Collections.unmodifiableMap(serviceName2RouteMap);
+        this.uri2RouteMap = Collections.unmodifiableMap(uri2RouteMap);
+        this.routeMatcher = new RouteMatcher(routeId2RouteMap.values());
+    }
+
+    /**
+     * 在当前路由表的基础上加入 routes 构建新的路由表，clear 为 true 时不保留当前的路由
+     */
+    public RouteTable with(Collection<RouteDefinition> routes, boolean clear) {
+        Map<String, RouteDefinition> routeId2RouteMap = clear ? new LinkedHashMap<>() : new LinkedHashMap<>(this.routeId2RouteMap);
+        for (RouteDefinition route : routes) {
+            if (route == null) continue;
+            routeId2RouteMap.put(route.getId(), route);
+        }
+        return new RouteTable(version + 1, routeId2RouteMap);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public RouteDefinition getRouteById(String id) {
+        return routeId2RouteMap.get(id);
+    }
+
+    public RouteDefinition getRouteByServiceName(String serviceName) {
+        return serviceName2RouteMap.get(serviceName);
+    }
+
+    public Set<Map.Entry<String, RouteDefinition>> getAllUriEntry() {
+        return uri2RouteMap.entrySet();
+    }
+
+    public Collection<RouteDefinition> getRoutes() {
+        return routeId2RouteMap.values();
+    }
+
+    /**
+     * 查找 uri 对应优先级最高的路由，只匹配不限制 Host、请求方法的路由，没有匹配时返回 null
+     */
+    public RouteDefinition match(String uri) {
+        return routeMatcher.match(null, null, uri, route -> true);
+    }
+
+    /**
+     * 按 Host、请求方法、uri 查找满足 accept 的优先级最高的路由，没有匹配时返回 null
+     */
+    public RouteDefinition match(String host, String method, String uri, Predicate<RouteDefinition> accept) {
+        return routeMatcher.match(host, method, uri, accept);
+    }
+
+}
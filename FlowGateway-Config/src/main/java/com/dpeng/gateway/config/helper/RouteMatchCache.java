@@ -0,0 +1,172 @@
+package com.dpeng.gateway.config.helper;
+
+import com.dpeng.gateway.common.metrics.Counter;
+import com.dpeng.gateway.common.metrics.MetricRegistry;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 有界的路由匹配结果缓存, 缓存项绑定路由表版本, 路由表发布新版本后整体失效。
+ * 缓存满时按访问频率决定是否接纳: 用 count-min sketch 近似统计每个键最近的访问次数,
+ * 新键比最早进入缓存的键访问更频繁时才替换它, 避免偶发的路径 (扫描、随机 id) 挤掉热点路径。
+ */
+public class RouteMatchCache {
+
+    // count-min sketch 的哈希函数个数
+    private static final int DEPTH = 4;
+
+    private static final int MAX_FREQUENCY = 15;
+
+    private final int maximumSize;
+
+    private final AtomicIntegerArray sketch;
+
+    private final int sketchMask;
+
+    // 记录次数达到该值后所有计数减半, 让频率反映最近的访问
+    private final int sampleSize;
+
+    private final AtomicInteger samples = new AtomicInteger();
+
+    private final Counter hits = MetricRegistry.getInstance().counter("route.cache.hit");
+
+    private final Counter misses = MetricRegistry.getInstance().counter("route.cache.miss");
+
+    private volatile Generation generation = new Generation(-1);
+
+    public RouteMatchCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        int width = Integer.highestOneBit(Math.max(16, maximumSize * 4 - 1)) << 1;
+        this.sketch = new AtomicIntegerArray(width);
+        this.sketchMask = width - 1;
+        this.sampleSize = maximumSize * 10;
+    }
+
+    /**
+     * 取出 version 版本路由表下 key 的匹配结果, 没有缓存时返回 null
+     */
+    public RouteDefinition get(long version, String key) {
+        increment(key);
+        Generation current = generation;
+        RouteDefinition route = current.version == version ? current.entries.get(key) : null;
+        if (route != null) {
+            hits.inc();
+        } else {
+            misses.inc();
+        }
+        return route;
+    }
+
+    public void put(long version, String key, RouteDefinition route) {
+        Generation current = generation;
+        if (current.version != version) {
+            if (current.version > version) {
+                return; // 旧版本路由表的结果
+            }
+            current = new Generation(version);
+            generation = current; // 新版本路由表, 所有旧缓存一起失效
+        }
+        if (current.entries.size() >= maximumSize && !evict(current, key)) {
+            return;
+        }
+        if (current.entries.putIfAbsent(key, route) == null) {
+            current.order.offer(key);
+        }
+    }
+
+    public int size() {
+        return generation.entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * 缓存已满, 新键比最早进入缓存的键访问更频繁时淘汰后者, 否则不接纳新键
+     */
+    private boolean evict(Generation current, String key) {
+        String victim = current.order.poll();
+        if (victim == null) {
+            return true;
+        }
+        if (frequency(key) > frequency(victim)) {
+            current.entries.remove(victim);
+            return true;
+        }
+        current.order.offer(victim); // 保留, 下次与下一个候选比较
+        return false;
+    }
+
+    private void increment(String key) {
+        int hash = spread(key.hashCode());
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            int count = sketch.get(index);
+            if (count < MAX_FREQUENCY) {
+                sketch.compareAndSet(index, count, count + 1);
+            }
+        }
+        if (samples.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, sketch.get(index(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * 所有计数减半, 并发下少量计数误差可以接受
+     */
+    private void reset() {
+        samples.set(0);
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, sketch.get(i) >>> 1);
+        }
+    }
+
+    private int index(int hash, int i) {
+        int h = hash * (0x9E3779B9 + (i << 1)); // 每个哈希函数使用不同的乘数
+        return (h ^ (h >>> 16)) & sketchMask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+
+    /**
+     * 某个路由表版本下的缓存项
+     */
+    private static class Generation {
+
+        private final long version;
+
+        private final ConcurrentHashMap<String, RouteDefinition> entries = new ConcurrentHashMap<>();
+
+        // 缓存项进入的顺序, 淘汰时从最早的开始比较
+        private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+
+        private Generation(long version) {
+            this.version = version;
+        }
+
+    }
+
+}
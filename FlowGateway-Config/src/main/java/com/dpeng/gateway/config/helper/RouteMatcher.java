@@ -0,0 +1,114 @@
+package com.dpeng.gateway.config.helper;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 路由决策结构, 路由变化时编译:
+ * 先按 Host 哈希查找, 再按请求方法哈希查找, 最后在对应的路径前缀树中匹配,
+ * 请求头、查询参数等谓词只在路径匹配的候选路由上检查, 每个请求的查找开销与配置的谓词数量无关。
+ * 没有配置 Host (请求方法) 的路由放进每个 Host (请求方法) 分桶, 以及不限 Host (请求方法) 的分桶。
+ */
+public class RouteMatcher {
+
+    private final Map<String /* host */, MethodIndex> hostIndex = new HashMap<>();
+
+    // 请求的 Host 没有单独分桶时使用, 只包含不限 Host 的路由
+    private final MethodIndex anyHost;
+
+    public RouteMatcher(Collection<RouteDefinition> routes) {
+        Set<String> hosts = new HashSet<>();
+        for (RouteDefinition route : routes) {
+            hosts.addAll(hosts(route));
+        }
+        for (String host : hosts) {
+            List<RouteDefinition> hostRoutes = new ArrayList<>();
+            for (RouteDefinition route : routes) {
+                Set<String> routeHosts = hosts(route);
+                if (routeHosts.isEmpty() || routeHosts.contains(host)) {
+                    hostRoutes.add(route);
+                }
+            }
+            hostIndex.put(host, new MethodIndex(hostRoutes));
+        }
+        List<RouteDefinition> anyHostRoutes = new ArrayList<>();
+        for (RouteDefinition route : routes) {
+            if (hosts(route).isEmpty()) {
+                anyHostRoutes.add(route);
+            }
+        }
+        anyHost = new MethodIndex(anyHostRoutes);
+    }
+
+    /**
+     * host 为不含端口的小写主机名, host、method 为空时只匹配不限制 Host、请求方法的路由
+     */
+    public RouteDefinition match(String host, String method, String uri, Predicate<RouteDefinition> accept) {
+        MethodIndex methodIndex = host == null ? anyHost : hostIndex.getOrDefault(host, anyHost);
+        RouteTrie trie = method == null ? methodIndex.anyMethod : methodIndex.methodIndex.getOrDefault(method, methodIndex.anyMethod);
+        return trie.match(uri, accept);
+    }
+
+    private static Set<String> hosts(RouteDefinition route) {
+        Set<String> hosts = route.getPredicates() == null ? null : route.getPredicates().getHosts();
+        if (hosts == null || hosts.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> normalized = new HashSet<>();
+        for (String host : hosts) {
+            normalized.add(host.toLowerCase(Locale.ROOT));
+        }
+        return normalized;
+    }
+
+    private static Set<String> methods(RouteDefinition route) {
+        Set<String> methods = route.getPredicates() == null ? null : route.getPredicates().getMethods();
+        if (methods == null || methods.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> normalized = new HashSet<>();
+        for (String method : methods) {
+            normalized.add(method.toUpperCase(Locale.ROOT));
+        }
+        return normalized;
+    }
+
+    /**
+     * 同一个 Host 分桶下按请求方法分桶的前缀树
+     */
+    private static class MethodIndex {
+
+        private final Map<String /* method */, RouteTrie> methodIndex = new HashMap<>();
+
+        // 请求方法没有单独分桶时使用, 只包含不限请求方法的路由
+        private final RouteTrie anyMethod;
+
+        private MethodIndex(List<RouteDefinition> routes) {
+            Set<String> methods = new HashSet<>();
+            for (RouteDefinition route : routes) {
+                methods.addAll(methods(route));
+            }
+            for (String method : methods) {
+                List<RouteDefinition> methodRoutes = new ArrayList<>();
+                for (RouteDefinition route : routes) {
+                    Set<String> routeMethods = methods(route);
+                    if (routeMethods.isEmpty() || routeMethods.contains(method)) {
+                        methodRoutes.add(route);
+                    }
+                }
+                methodIndex.put(method, new RouteTrie(methodRoutes));
+            }
+            List<RouteDefinition> anyMethodRoutes = new ArrayList<>();
+            for (RouteDefinition route : routes) {
+                if (methods(route).isEmpty()) {
+                    anyMethodRoutes.add(route);
+                }
+            }
+            anyMethod = new RouteTrie(anyMethodRoutes);
+        }
+
+    }
+
+}
@@ -3,10 +3,15 @@ package com.dpeng.gateway.config.helper;
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.NotFoundException;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
+import com.dpeng.gateway.config.config.manager.RouteTable;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.QueryStringDecoder;
 
-import java.util.*;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 
 /**
@@ -16,38 +21,151 @@ public class RouteResolver {
 
     private static final DynamicConfigManager manager = DynamicConfigManager.getInstance();
 
+    // 路由匹配结果缓存，为空表示不缓存
+    private static volatile RouteMatchCache cache;
+
+    /**
+     * 开启路由匹配结果缓存，maximumSize 为最大条目数，小于等于 0 时关闭
+     */
+    public static void initCache(int maximumSize) {
+        cache = maximumSize > 0 ? new RouteMatchCache(maximumSize) : null;
+    }
+
+    public static RouteMatchCache getCache() {
+        return cache;
+    }
+
     /**
      * 根据uri解析出对应的路由
      */
     public static RouteDefinition matchingRouteByUri(String uri) {
-        // 1. 获取所有的路由配置（URI -> RouteDefinition）
-        Set<Map.Entry<String, RouteDefinition>> allUriEntry = manager.getAllUriEntry();
+        RouteTable routeTable = manager.getRouteTable();
+        RouteMatchCache cache = RouteResolver.cache;
+        String key = cache == null ? null : path(uri);
+        RouteDefinition route = cache == null ? null : cache.get(routeTable.getVersion(), key);
+        if (route != null) {
+            return route;
+        }
 
-        // 2. 存储所有匹配的路由
-        List<RouteDefinition> matchedRoute = new ArrayList<>();
+        // 1. 在当前路由表快照编译好的前缀树中查找，选出优先级最高的路由：
+        //    ① `order` 值最小
+        //    ② 若 order 相同，则 URI 长度最长（更具体的路由）
+        route = routeTable.match(uri);
 
-        // 3. 遍历所有路由，使用正则匹配请求的 URI
-        for (Map.Entry<String, RouteDefinition> entry: allUriEntry) {
-            String regex = entry.getKey().replace("**", ".*");// ** 通配符转换为正则
-            if (Pattern.matches(regex, uri)) {
-                matchedRoute.add(entry.getValue());
-            }
+        // 2. 如果没有匹配的路由，抛出 404 异常
+        if (route == null) {
+            throw new NotFoundException(ResponseCode.PATH_NO_MATCHED);
+        }
+        if (cache != null) {
+            cache.put(routeTable.getVersion(), key, route);
         }
-        // 4. 如果没有匹配的路由，抛出 404 异常
-        if (matchedRoute.isEmpty()) {
+        return route;
+    }
+
+    /**
+     * 根据请求的 Host、请求方法、uri 以及请求头、查询参数谓词解析出对应的路由
+     */
+    public static RouteDefinition matchingRoute(HttpRequest request) {
+        RouteTable routeTable = manager.getRouteTable();
+        String host = host(request);
+        String method = request.method().name();
+        RouteMatchCache cache = RouteResolver.cache;
+        String key = cache == null ? null : host + ' ' + method + ' ' + path(request.uri());
+        RouteDefinition route = cache == null ? null : cache.get(routeTable.getVersion(), key);
+        if (route != null) {
+            return route;
+        }
+
+        RoutePredicate predicate = new RoutePredicate(request);
+        route = routeTable.match(host, method, request.uri(), predicate::test);
+        if (route == null) {
             throw new NotFoundException(ResponseCode.PATH_NO_MATCHED);
         }
+        // 检查过请求头、查询参数谓词的结果与具体请求有关，不缓存
+        if (cache != null && !predicate.requestDependent) {
+            cache.put(routeTable.getVersion(), key, route);
+        }
+        return route;
+    }
 
-        // 5. 按 `order` 进行排序（order 值越小，优先级越高）
-        matchedRoute.sort(Comparator.comparingInt(RouteDefinition::getOrder));
+    /**
+     * 去掉查询参数的路径，作为缓存键
+     */
+    private static String path(String uri) {
+        int query = uri.indexOf('?');
+        return query >= 0 ? uri.substring(0, query) : uri;
+    }
+
+    /**
+     * Host 请求头去掉端口并转为小写
+     */
+    private static String host(HttpRequest request) {
+        String host = request.headers().get(HttpHeaderNames.HOST);
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        int end = host.startsWith("[") ? host.indexOf(']') + 1 : host.indexOf(':'); // IPv6 地址带 []
+        if (end > 0 && end < host.length()) {
+            host = host.substring(0, end);
+        }
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 检查请求头、查询参数谓词，只对路径已匹配的候选路由执行，查询参数第一次需要时才解析
+     */
+    private static class RoutePredicate {
+
+        private final HttpRequest request;
+
+        private Map<String, List<String>> queryParams;
+
+        // 是否检查过请求头、查询参数谓词
+        private boolean requestDependent;
+
+        private RoutePredicate(HttpRequest request) {
+            this.request = request;
+        }
+
+        private boolean test(RouteDefinition route) {
+            RouteDefinition.PredicateConfig predicates = route.getPredicates();
+            if (predicates == null) {
+                return true;
+            }
+            if ((predicates.getHeaders() != null && !predicates.getHeaders().isEmpty())
+                    || (predicates.getQueryParams() != null && !predicates.getQueryParams().isEmpty())) {
+                requestDependent = true;
+            }
+            if (predicates.getHeaders() != null) {
+                for (Map.Entry<String, String> header : predicates.getHeaders().entrySet()) {
+                    if (!matches(request.headers().getAll(header.getKey()), header.getValue())) {
+                        return false;
+                    }
+                }
+            }
+            if (predicates.getQueryParams() != null && !predicates.getQueryParams().isEmpty()) {
+                if (queryParams == null) {
+                    queryParams = new QueryStringDecoder(request.uri()).parameters();
+                }
+                for (Map.Entry<String, String> param : predicates.getQueryParams().entrySet()) {
+                    if (!matches(queryParams.get(param.getKey()), param.getValue())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * expected 为空时只要求存在，否则要求有一个值相等
+         */
+        private static boolean matches(List<String> values, String expected) {
+            if (values == null || values.isEmpty()) {
+                return false;
+            }
+            return expected == null || expected.isEmpty() || values.contains(expected);
+        }
 
-        // 6. 选出优先级最高的路由：
-        //    ① `order` 值最小
-        //    ② 若 order 相同，则 URI 长度最长（更具体的路由）
-        return matchedRoute.stream()
-                .min(Comparator.comparingInt(RouteDefinition::getOrder)
-                        .thenComparing(route -> route.getUri().length(), Comparator.reverseOrder()))
-                .orElseThrow();
     }
 
 }
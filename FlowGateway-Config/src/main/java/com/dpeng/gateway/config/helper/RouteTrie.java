@@ -0,0 +1,199 @@
+package com.dpeng.gateway.config.helper;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 按路径段编译的路由前缀树, 路由变化时整体重建, 查找时间与请求路径的段数成正比。
+ * 路由 uri 支持:
+ * 普通段, 精确匹配;
+ * "*" 段, 匹配任意一段;
+ * 末尾的 "**" 段, 匹配其后的任意内容 (至少包含分隔的 "/"), 即 /user/** 匹配 /user/ 和 /user/a/b, 不匹配 /user。
+ * 其他写法 (段中间的 **、含正则字符的段等) 在构建时编译为正则, 与原来的匹配规则一致。
+ * 多个路由匹配时取 order 最小的, order 相同取 uri 最长的, 再相同取谓词条件多的。
+ * 查找时可以传入额外条件 (请求头、查询参数等谓词), 只在路径匹配的候选路由上按优先级依次检查。
+ */
+public class RouteTrie {
+
+    private static final String SINGLE_WILDCARD = "*";
+
+    private static final String MULTI_WILDCARD = "**";
+
+    private static final Comparator<RouteDefinition> PRIORITY = Comparator.comparingInt(RouteDefinition::getOrder)
+            .thenComparing(route -> route.getUri().length(), Comparator.reverseOrder())
+            .thenComparing(RouteTrie::predicateCount, Comparator.reverseOrder());
+
+    private final Node root = new Node();
+
+    // 无法放进前缀树的路由, 构建时预编译正则
+    private final List<RegexRoute> regexRoutes = new ArrayList<>();
+
+    public RouteTrie(Collection<RouteDefinition> routes) {
+        for (RouteDefinition route : routes) {
+            if (route == null || route.getUri() == null) continue;
+            String[] segments = segments(route.getUri());
+            if (segments == null || !insert(segments, route)) {
+                regexRoutes.add(new RegexRoute(Pattern.compile(route.getUri().replace(MULTI_WILDCARD, ".*")), route));
+            }
+        }
+    }
+
+    /**
+     * 查找 path 对应优先级最高的路由, 没有匹配时返回 null, path 中的查询参数不参与匹配
+     */
+    public RouteDefinition match(String path) {
+        return match(path, route -> true);
+    }
+
+    /**
+     * 查找 path 对应且满足 accept 的优先级最高的路由
+     */
+    public RouteDefinition match(String path, Predicate<RouteDefinition> accept) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        RouteDefinition best = null;
+        String[] segments = segments(path);
+        if (segments != null) {
+            best = match(root, segments, 0, null, accept);
+        }
+        for (RegexRoute regexRoute : regexRoutes) {
+            if ((best == null || PRIORITY.compare(regexRoute.route, best) < 0) && regexRoute.pattern.matcher(path).matches()
+                    && accept.test(regexRoute.route)) {
+                best = regexRoute.route;
+            }
+        }
+        return best;
+    }
+
+    private RouteDefinition match(Node node, String[] segments, int index, RouteDefinition best, Predicate<RouteDefinition> accept) {
+        if (index < segments.length) {
+            // 末尾 ** 要求后面至少还有一段 (可以为空段)
+            best = better(best, first(node.multiWildcardRoutes, best, accept));
+            Node child = node.children.get(segments[index]);
+            if (child != null) {
+                best = match(child, segments, index + 1, best, accept);
+            }
+            if (node.singleWildcard != null) {
+                best = match(node.singleWildcard, segments, index + 1, best, accept);
+            }
+            return best;
+        }
+        return better(best, first(node.routes, best, accept));
+    }
+
+    /**
+     * 按优先级取第一个满足条件的路由, 优先级不高于 best 时不再检查
+     */
+    private static RouteDefinition first(List<RouteDefinition> routes, RouteDefinition best, Predicate<RouteDefinition> accept) {
+        for (RouteDefinition route : routes) {
+            if (best != null && PRIORITY.compare(route, best) >= 0) {
+                return null;
+            }
+            if (accept.test(route)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 路由的谓词条件数, 条件越多越具体
+     */
+    private static int predicateCount(RouteDefinition route) {
+        RouteDefinition.PredicateConfig predicates = route.getPredicates();
+        if (predicates == null) return 0;
+        int count = 0;
+        if (predicates.getHosts() != null && !predicates.getHosts().isEmpty()) count++;
+        if (predicates.getMethods() != null && !predicates.getMethods().isEmpty()) count++;
+        if (predicates.getHeaders() != null) count += predicates.getHeaders().size();
+        if (predicates.getQueryParams() != null) count += predicates.getQueryParams().size();
+        return count;
+    }
+
+    private static RouteDefinition better(RouteDefinition current, RouteDefinition candidate) {
+        if (candidate == null) return current;
+        if (current == null) return candidate;
+        return PRIORITY.compare(candidate, current) < 0 ? candidate : current;
+    }
+
+    /**
+     * 插入前缀树, 含有前缀树不支持的写法时返回 false
+     */
+    private boolean insert(String[] segments, RouteDefinition route) {
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (MULTI_WILDCARD.equals(segment) ? i != segments.length - 1 : !isPlain(segment)) {
+                return false;
+            }
+        }
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (MULTI_WILDCARD.equals(segment)) {
+                add(node.multiWildcardRoutes, route);
+                return true;
+            }
+            if (SINGLE_WILDCARD.equals(segment)) {
+                node = node.singleWildcard == null ? (node.singleWildcard = new Node()) : node.singleWildcard;
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+        add(node.routes, route);
+        return true;
+    }
+
+    private static void add(List<RouteDefinition> routes, RouteDefinition route) {
+        int index = 0;
+        while (index < routes.size() && PRIORITY.compare(routes.get(index), route) <= 0) {
+            index++;
+        }
+        routes.add(index, route);
+    }
+
+    /**
+     * 普通段或 * 段, 不含正则字符
+     */
+    private static boolean isPlain(String segment) {
+        if (SINGLE_WILDCARD.equals(segment)) return true;
+        for (int i = 0; i < segment.length(); i++) {
+            if (".[]{}()\\^$|?+*".indexOf(segment.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按 / 切分路径, 保留空段, 不以 / 开头时返回 null
+     */
+    private static String[] segments(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        return path.substring(1).split("/", -1);
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Node singleWildcard;
+
+        // 以当前节点结束的路由, 按优先级排序
+        private final List<RouteDefinition> routes = new ArrayList<>(1);
+
+        // 当前节点后接 ** 的路由, 按优先级排序
+        private final List<RouteDefinition> multiWildcardRoutes = new ArrayList<>(1);
+
+    }
+
+    private record RegexRoute(Pattern pattern, RouteDefinition route) {
+    }
+
+}
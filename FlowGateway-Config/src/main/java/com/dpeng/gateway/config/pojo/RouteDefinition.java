@@ -2,12 +2,15 @@ package com.dpeng.gateway.config.pojo;
 
 import com.dpeng.gateway.common.enums.CircuitBreakerEnum;
 import com.dpeng.gateway.common.enums.FlowEnum;
+import com.dpeng.gateway.common.enums.FlowKeyEnum;
 import com.dpeng.gateway.common.enums.ResilienceEnum;
+import com.dpeng.gateway.common.enums.UpstreamProtocolEnum;
 import lombok.Data;
 
 import java.util.*;
 
 import static com.dpeng.gateway.common.constant.FallbackConstant.DEFAULT_FALLBACK_HANDLER_NAME;
+import static com.dpeng.gateway.common.constant.FlowConstant.LOCAL_QUOTA_COORDINATOR;
 import static com.dpeng.gateway.common.constant.GrayConstant.MAX_GRAY_THRESHOLD;
 import static com.dpeng.gateway.common.constant.GrayConstant.THRESHOLD_GRAY_STRATEGY;
 import static com.dpeng.gateway.common.constant.LoadBalanceConstant.ROUND_ROBIN_LOAD_BALANCE_STRATEGY;
@@ -30,12 +33,21 @@ public class RouteDefinition {
     // 路由顺序，当请求匹配到多个路由时，选择顺序小的
     private int order = 0;
 
+    // 路由谓词，除 uri 外请求还需满足的条件
+    private PredicateConfig predicates = new PredicateConfig();
+
     // 系统弹性配置，熔断、降级、重试等
     private ResilienceConfig resilience = new ResilienceConfig();
 
     // 路由需要走的过滤器
     private Set<FilterConfig> filterConfigs = new HashSet<>();
 
+    // 流式转发配置，开启后请求体不再在网关内完整聚合
+    private StreamingConfig streaming = new StreamingConfig();
+
+    // 与下游实例通信的协议，H2C 时多个请求复用少量连接，仅原生 netty 客户端生效
+    private UpstreamProtocolEnum upstreamProtocol = UpstreamProtocolEnum.HTTP1_1;
+
     @Data
     public static class ResilienceConfig {
 
@@ -80,6 +92,32 @@ public class RouteDefinition {
 
     }
 
+    @Data
+    public static class PredicateConfig {
+
+        private Set<String> hosts = new HashSet<>(); // 匹配的 Host，不含端口，忽略大小写，为空表示不限制
+
+        private Set<String> methods = new HashSet<>(); // 匹配的请求方法，如 GET、POST，为空表示不限制
+
+        private Map<String, String> headers = new HashMap<>(); // 需要满足的请求头，值为空表示只要求存在，请求头名忽略大小写
+
+        private Map<String, String> queryParams = new HashMap<>(); // 需要满足的查询参数，值为空表示只要求存在
+
+    }
+
+    @Data
+    public static class StreamingConfig {
+
+        private boolean requestEnabled = false; // 是否开启请求体流式转发，请求头到达即路由、负载均衡，请求体边收边发给下游
+
+        private int highWaterMark = 1024 * 1024; // 待转发的请求体字节数超过该值时暂停读取客户端，单位字节
+
+        private int lowWaterMark = 256 * 1024; // 待转发的请求体字节数低于该值时恢复读取客户端，单位字节
+
+        private boolean responseEnabled = false; // 是否开启响应体流式转发，收到下游响应头即执行后置过滤器并写回，响应体边收边发给客户端
+
+    }
+
     @Data
     public static class FilterConfig {
 
@@ -137,6 +175,10 @@ public class RouteDefinition {
 
     }
 
+    /**
+     * 流控配置, 作用范围是单个路由: 每个路由按自己的配置单独计数, 同一个服务通过多个路由暴露时,
+     * 服务整体最多放行各路由 capacity 之和; 需要限制整个服务时只配置一个路由, 或按路由数拆分 capacity
+     */
     @Data
     public static class FlowFilterConfig {
 
@@ -151,7 +193,7 @@ public class RouteDefinition {
         private FlowEnum type = TOKEN_BUCKET;
 
         /**
-         * 容量
+         * 容量, 单个路由的容量
          */
         private int capacity = 1000;
 
@@ -163,6 +205,66 @@ public class RouteDefinition {
          */
         private int rate = 500;
 
+        /**
+         * 令牌桶创建时的令牌数, 小于 0 时为 capacity (桶满)
+         */
+        private int initialBurst = -1;
+
+        /**
+         * 漏桶每秒流出的请求数, 大于 0 时代替 rate, 可以表示小于 1ms 的漏水间隔
+         */
+        private int leakRatePerSecond = 0;
+
+        /**
+         * 漏桶中请求的最长排队时间, 单位 ms, 排队时间会超过该值的请求直接拒绝
+         */
+        private int maxQueueWait = 1000;
+
+        /**
+         * 按键限流时键的来源, 为空时不按键限流; 按键限流在路由级限流之前执行
+         */
+        private FlowKeyEnum keyType;
+
+        /**
+         * 键的名字: 请求头名、cookie 名, 或路径段的下标 (从 0 开始)
+         */
+        private String keyName;
+
+        /**
+         * 每个键在窗口内最多放行的请求数
+         */
+        private int keyCapacity = 100;
+
+        /**
+         * 按键限流的窗口大小, 单位 ms
+         */
+        private int keyWindow = 1000;
+
+        /**
+         * 精确计数的热点键个数上限
+         */
+        private int hotKeyCapacity = 1024;
+
+        /**
+         * 是否开启集群限流, 开启后 capacity 为所有网关节点合计在 clusterWindow 内放行的请求数, 代替 type 指定的单机限流
+         */
+        private boolean cluster = false;
+
+        /**
+         * 集群限流的窗口大小, 单位 ms
+         */
+        private int clusterWindow = 1000;
+
+        /**
+         * 每次从配额协调器租用的令牌数, 小于等于 0 时为 capacity / (节点数 * 10)
+         */
+        private int leaseSize = 0;
+
+        /**
+         * 配额协调器
+         */
+        private String quotaCoordinator = LOCAL_QUOTA_COORDINATOR;
+
     }
 }
 
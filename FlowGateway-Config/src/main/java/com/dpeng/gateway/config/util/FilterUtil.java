@@ -1,6 +1,6 @@
 package com.dpeng.gateway.config.util;
 
-import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.json.JSONUtil;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 
@@ -26,7 +26,18 @@ public class FilterUtil {
     public static <T> T findFilterConfigByClass(Collection<RouteDefinition.FilterConfig> filterConfigs, String name, Class<T> clazz) {
         RouteDefinition.FilterConfig filterConfig = findFilterConfigByName(filterConfigs, name);
         if (filterConfig == null) return null;
-        return BeanUtil.toBean(filterConfig.getConfig(), clazz);
+        return parseConfig(filterConfig, clazz);
+    }
+
+    /**
+     * 把过滤器的 json 配置解析为配置对象, 没有配置时使用默认值
+     */
+    public static <T> T parseConfig(RouteDefinition.FilterConfig filterConfig, Class<T> clazz) {
+        String config = filterConfig.getConfig();
+        if (config == null || config.isBlank()) {
+            return ReflectUtil.newInstance(clazz);
+        }
+        return JSONUtil.toBean(config, clazz);
     }
 
     public static RouteDefinition.FilterConfig buildDefaultGrayFilterConfig() {
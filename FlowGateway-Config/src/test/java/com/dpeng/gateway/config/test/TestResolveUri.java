@@ -1,14 +1,26 @@
 package com.dpeng.gateway.config.test;
 
+import com.dpeng.gateway.common.exception.NotFoundException;
 import com.dpeng.gateway.config.config.Config;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
+import com.dpeng.gateway.config.config.manager.RouteDiff;
+import com.dpeng.gateway.config.config.manager.RouteTable;
 import com.dpeng.gateway.config.helper.RouteResolver;
 import com.dpeng.gateway.config.loader.ConfigLoader;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import io.netty.handler.codec.http.*;
 import org.junit.Test;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 public class TestResolveUri {
 
     @Test
@@ -40,4 +52,116 @@ public class TestResolveUri {
         System.out.println(RouteResolver.matchingRouteByUri("/order/cancel/hello"));
     }
 
+    @Test
+    public void testRouteTableSnapshot() {
+        RouteDefinition user = new RouteDefinition();
+        user.setServiceName("user-service");
+        user.setUri("/snapshot/user/**");
+        DynamicConfigManager manager = DynamicConfigManager.getInstance();
+        manager.updateRoutes(List.of(user), true);
+        RouteTable before = manager.getRouteTable();
+
+        RouteDefinition order = new RouteDefinition();
+        order.setServiceName("order-service");
+        order.setUri("/snapshot/order/**");
+        manager.updateRoutes(List.of(order), true);
+        RouteTable after = manager.getRouteTable();
+
+        // 旧快照不受新发布的影响
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertEquals(user, before.match("/snapshot/user/1"));
+        assertNull(after.match("/snapshot/user/1"));
+        assertEquals(order, RouteResolver.matchingRouteByUri("/snapshot/order/1"));
+        assertEquals(order, manager.getRouteByServiceName("order-service"));
+    }
+
+    @Test
+    public void testApplyRoutesDiff() {
+        DynamicConfigManager manager = DynamicConfigManager.getInstance();
+        RouteDefinition user = new RouteDefinition();
+        user.setId("diff-user");
+        user.setServiceName("diff-user-service");
+        user.setUri("/diff/user/**");
+        RouteDefinition order = new RouteDefinition();
+        order.setId("diff-order");
+        order.setServiceName("diff-order-service");
+        order.setUri("/diff/order/**");
+        manager.applyRoutes(List.of(user, order));
+
+        List<String> notified = new ArrayList<>();
+        manager.addRouteListener("diff-user-service", route -> notified.add(route.getServiceName()));
+        manager.addRouteListener("diff-order-service", route -> notified.add(route.getServiceName()));
+
+        RouteDefinition newOrder = new RouteDefinition();
+        newOrder.setId("diff-order");
+        newOrder.setServiceName("diff-order-service");
+        newOrder.setUri("/diff/order/**");
+        newOrder.setOrder(1);
+        RouteDiff diff = manager.applyRoutes(List.of(user, newOrder));
+
+        // 只有修改过的路由被通知
+        assertEquals(1, diff.getModified().size());
+        assertEquals(List.of("diff-order-service"), notified);
+    }
+
+    @Test
+    public void testApplyEmptyRoutes() {
+        DynamicConfigManager manager = DynamicConfigManager.getInstance();
+        RouteDefinition user = new RouteDefinition();
+        user.setId("empty-user");
+        user.setServiceName("empty-user-service");
+        user.setUri("/empty/user/**");
+        manager.applyRoutes(List.of(user));
+
+        List<String> notified = new ArrayList<>();
+        manager.addRouteListener("empty-user-service", route -> notified.add(route.getServiceName()));
+        RouteDiff diff = manager.applyRoutes(List.of());
+
+        // 全量推送为空时删除所有路由并通知监听器
+        assertEquals(List.of(user), diff.getRemoved());
+        assertEquals(List.of("empty-user-service"), notified);
+        assertTrue(manager.getRouteTable().getRoutes().isEmpty());
+        assertNull(manager.getRouteById("empty-user"));
+    }
+
+    @Test
+    public void testPredicates() {
+        RouteDefinition api = new RouteDefinition();
+        api.setId("predicate-api");
+        api.setServiceName("api-service");
+        api.setUri("/predicate/**");
+        api.getPredicates().getHosts().add("api.example.com");
+        RouteDefinition post = new RouteDefinition();
+        post.setId("predicate-post");
+        post.setServiceName("post-service");
+        post.setUri("/predicate/**");
+        post.getPredicates().getHosts().add("api.example.com");
+        post.getPredicates().getMethods().add("post");
+        RouteDefinition canary = new RouteDefinition();
+        canary.setId("predicate-canary");
+        canary.setServiceName("canary-service");
+        canary.setUri("/predicate/**");
+        canary.setOrder(-1);
+        canary.getPredicates().getHeaders().put("X-Canary", "");
+        canary.getPredicates().getQueryParams().put("v", "2");
+        DynamicConfigManager.getInstance().applyRoutes(List.of(api, post, canary));
+
+        assertEquals(api, RouteResolver.matchingRoute(request(HttpMethod.GET, "API.example.com:8080", "/predicate/1")));
+        assertEquals(post, RouteResolver.matchingRoute(request(HttpMethod.POST, "api.example.com", "/predicate/1")));
+        HttpRequest canaryRequest = request(HttpMethod.GET, "api.example.com", "/predicate/1?v=2");
+        canaryRequest.headers().set("x-canary", "true");
+        assertEquals(canary, RouteResolver.matchingRoute(canaryRequest));
+        try {
+            RouteResolver.matchingRoute(request(HttpMethod.GET, "other.example.com", "/predicate/1"));
+            fail();
+        } catch (NotFoundException ignored) {
+        }
+    }
+
+    private static HttpRequest request(HttpMethod method, String host, String uri) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        request.headers().set(HttpHeaderNames.HOST, host);
+        return request;
+    }
+
 }
@@ -0,0 +1,55 @@
+package com.dpeng.gateway.config.test;
+
+import com.dpeng.gateway.config.helper.RouteMatchCache;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestRouteMatchCache {
+
+    @Test
+    public void testVersion() {
+        RouteMatchCache cache = new RouteMatchCache(16);
+        RouteDefinition route = new RouteDefinition();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        assertNull(cache.get(1, "/user/1"));
+        cache.put(1, "/user/1", route);
+        assertSame(route, cache.get(1, "/user/1"));
+        // 路由表版本变化后全部失效
+        assertNull(cache.get(2, "/user/1"));
+        cache.put(2, "/user/2", route);
+        assertEquals(1, cache.size());
+        // 命中、未命中次数导出到 MetricRegistry
+        assertEquals(1, cache.getHitCount() - hits);
+        assertEquals(2, cache.getMissCount() - misses);
+    }
+
+    @Test
+    public void testFrequencyAdmission() {
+        RouteMatchCache cache = new RouteMatchCache(2);
+        RouteDefinition route = new RouteDefinition();
+        for (int i = 0; i < 5; i++) {
+            cache.get(1, "/hot/a");
+            cache.get(1, "/hot/b");
+        }
+        cache.put(1, "/hot/a", route);
+        cache.put(1, "/hot/b", route);
+        // 只访问过一次的路径不会挤掉热点路径
+        for (int i = 0; i < 10; i++) {
+            cache.get(1, "/scan/" + i);
+            cache.put(1, "/scan/" + i, route);
+        }
+        assertSame(route, cache.get(1, "/hot/a"));
+        assertSame(route, cache.get(1, "/hot/b"));
+        // 访问更频繁的新路径可以替换
+        for (int i = 0; i < 10; i++) {
+            cache.get(1, "/hot/c");
+        }
+        cache.put(1, "/hot/c", route);
+        assertSame(route, cache.get(1, "/hot/c"));
+        assertEquals(2, cache.size());
+    }
+
+}
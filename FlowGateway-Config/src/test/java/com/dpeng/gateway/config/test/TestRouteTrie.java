@@ -0,0 +1,52 @@
+package com.dpeng.gateway.config.test;
+
+import com.dpeng.gateway.config.helper.RouteTrie;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestRouteTrie {
+
+    private static RouteDefinition route(String id, String uri, int order) {
+        RouteDefinition route = new RouteDefinition();
+        route.setId(id);
+        route.setUri(uri);
+        route.setOrder(order);
+        return route;
+    }
+
+    @Test
+    public void testMatch() {
+        RouteTrie trie = new RouteTrie(List.of(
+                route("user", "/api/user/**", 0),
+                route("register", "/api/user/register/**", 0),
+                route("detail", "/api/user/*/detail", 0),
+                route("order", "/api/order/**", 1),
+                route("orderFirst", "/api/order/cancel/**", 2),
+                route("exact", "/health", 0)));
+
+        assertEquals("register", trie.match("/api/user/register/hello").getId()); // order 相同取最长的 uri
+        assertEquals("user", trie.match("/api/user/").getId());
+        assertNull(trie.match("/api/user")); // ** 不匹配没有 / 的前缀
+        assertEquals("detail", trie.match("/api/user/1/detail").getId());
+        assertEquals("user", trie.match("/api/user/1/detail/more").getId());
+        assertEquals("order", trie.match("/api/order/cancel/1").getId()); // order 小的优先
+        assertEquals("exact", trie.match("/health?verbose=true").getId());
+        assertNull(trie.match("/healthz"));
+    }
+
+    @Test
+    public void testRegexFallback() {
+        RouteTrie trie = new RouteTrie(List.of(
+                route("static", "/static/**/app.js", 0),
+                route("all", "/**", 10)));
+
+        assertEquals("static", trie.match("/static/v1/app.js").getId());
+        assertEquals("all", trie.match("/static/v1/app.css").getId());
+        assertEquals("all", trie.match("/").getId());
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.dpeng.gateway.core.algorithm;
+
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.exception.LimitedException;
+import com.dpeng.gateway.common.metrics.Counter;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.filter.flow.RateLimiter;
+import com.dpeng.gateway.core.filter.flow.cluster.QuotaCoordinator;
+import com.dpeng.gateway.core.helper.MetricsHelper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * 限流: 集群限流, 所有网关节点合计在窗口内最多放行 capacity 个请求。
+ * 节点从配额协调器批量租用令牌, 放行只消耗本地令牌; 令牌低于半批时异步续租, 请求不等待协调器。
+ * 每批令牌只在租用时所在的协调器窗口内有效, 窗口结束时剩余的令牌作废, 不会带入下一个窗口, 避免节点囤积令牌超出集群容量。
+ * 协调器不可达 (失败或超时) 或首次租用还未返回时降级为本地滑动窗口限流, 容量为 capacity / 节点数, 并按间隔重试租用。
+ */
+@Slf4j
+public class ClusterRateLimiter implements RateLimiter {
+
+    private final QuotaCoordinator coordinator;
+
+    private final String key;
+
+    private final int capacity;
+
+    private final int windowSizeInMillis;
+
+    private final long windowNanos;
+
+    private final int leaseSize; // 小于等于 0 时按节点数计算
+
+    private final IntSupplier fleetSize;
+
+    // 未作废的租约, 按租到的先后排列, 先消耗先租到的
+    private final Queue<Lease> leases = new ConcurrentLinkedQueue<>();
+
+    // 所有未作废租约的剩余令牌数
+    private final AtomicLong tokens = new AtomicLong();
+
+    // 下一次允许租用的时间, 租用失败或配额用完时按间隔重试
+    private volatile long nextLeaseTime = System.nanoTime();
+
+    private final AtomicBoolean leasing = new AtomicBoolean();
+
+    private volatile boolean degraded = true;
+
+    private volatile DegradedLimiter degradedLimiter;
+
+    private final Counter leaseFailed;
+
+    /**
+     * @param key       配额的键, 所有节点上同一个路由的键必须相同
+     * @param fleetSize 当前的网关节点数
+     * @param name      指标名后缀, 一般为路由id
+     */
+    public ClusterRateLimiter(QuotaCoordinator coordinator, String key, int capacity, int windowSizeInMillis, int leaseSize,
+                              IntSupplier fleetSize, String name) {
+        this.coordinator = coordinator;
+        this.key = key;
+        this.capacity = capacity;
+        this.windowSizeInMillis = Math.max(1, windowSizeInMillis);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(this.windowSizeInMillis);
+        this.leaseSize = leaseSize;
+        this.fleetSize = fleetSize;
+        this.leaseFailed = MetricsHelper.routeCounter("flow.cluster.lease.failed.", name);
+        lease(System.nanoTime()); // 提前租用第一批令牌
+    }
+
+    @Override
+    public FilterResult tryConsume(GatewayContext context) {
+        long now = System.nanoTime();
+        if (degraded) {
+            lease(now);
+            return degradedLimiter().tryConsume(context);
+        }
+        for (Lease lease; (lease = leases.peek()) != null; ) {
+            if (now - lease.expireTime >= 0) { // 租约所在的窗口已结束, 剩余令牌作废
+                if (leases.remove(lease)) {
+                    tokens.addAndGet(-lease.tokens.getAndSet(0));
+                }
+                continue;
+            }
+            if (lease.tryAcquire()) {
+                if (tokens.decrementAndGet() < leaseSize() / 2) { // 低于半批时续租
+                    lease(now);
+                }
+                return FilterResult.CONTINUE;
+            }
+            leases.remove(lease); // 已用完
+        }
+        lease(now);
+        throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * 是否处于降级状态
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * 异步租用一批令牌, 同一时间只有一个租用请求
+     */
+    private void lease(long now) {
+        if (now - nextLeaseTime < 0 || !leasing.compareAndSet(false, true)) {
+            return;
+        }
+        long retryInterval = windowNanos / 10;
+        // 协调器按对齐的固定窗口分配配额, 租到的令牌在发起租用时所在的窗口结束时作废;
+        // 协调器在下一个窗口才处理时令牌提前作废, 只会少放行不会多放行
+        long millis = System.currentTimeMillis();
+        long expireTime = now + TimeUnit.MILLISECONDS.toNanos(windowSizeInMillis - millis % windowSizeInMillis);
+        try {
+            coordinator.acquire(key, leaseSize(), capacity, windowSizeInMillis)
+                    .orTimeout(Math.max(TimeUnit.NANOSECONDS.toMillis(retryInterval), 10), TimeUnit.MILLISECONDS)
+                    .whenComplete((granted, t) -> onLeased(granted, t, expireTime, retryInterval));
+        } catch (Throwable t) {
+            onLeased(null, t, expireTime, retryInterval);
+        }
+    }
+
+    private void onLeased(Integer granted, Throwable t, long expireTime, long retryInterval) {
+        long now = System.nanoTime();
+        if (t != null) {
+            leaseFailed.inc();
+            if (!degraded) {
+                log.warn("quota coordinator {} unreachable, degrade to local limit: {}", coordinator.mark(), key, t);
+            }
+            degraded = true;
+            nextLeaseTime = now + retryInterval;
+        } else {
+            if (granted > 0) {
+                if (now - expireTime < 0) {
+                    tokens.addAndGet(granted);
+                    leases.offer(new Lease(new AtomicLong(granted), expireTime));
+                }
+                nextLeaseTime = now;
+            } else { // 本窗口配额已用完
+                nextLeaseTime = now + retryInterval;
+            }
+            degraded = false;
+        }
+        leasing.set(false);
+    }
+
+    private int leaseSize() {
+        return leaseSize > 0 ? leaseSize : Math.max(1, capacity / (fleetSize.getAsInt() * 10));
+    }
+
+    /**
+     * 降级时的本地限流器, 节点数变化时重建
+     */
+    private RateLimiter degradedLimiter() {
+        int size = Math.max(1, fleetSize.getAsInt());
+        DegradedLimiter limiter = degradedLimiter;
+        if (limiter == null || limiter.fleetSize != size) {
+            degradedLimiter = limiter = new DegradedLimiter(size,
+                    new SlidingWindowRateLimiter(Math.max(1, capacity / size), windowSizeInMillis));
+        }
+        return limiter.limiter;
+    }
+
+    private record DegradedLimiter(int fleetSize, RateLimiter limiter) {
+    }
+
+    /**
+     * 一批租到的令牌和它作废的时间 (System.nanoTime)
+     */
+    private record Lease(AtomicLong tokens, long expireTime) {
+
+        private boolean tryAcquire() {
+            for (long left; (left = tokens.get()) > 0; ) {
+                if (tokens.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
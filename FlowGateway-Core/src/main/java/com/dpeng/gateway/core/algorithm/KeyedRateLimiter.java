@@ -0,0 +1,190 @@
+package com.dpeng.gateway.core.algorithm;
+
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.exception.LimitedException;
+import com.dpeng.gateway.common.metrics.Counter;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.filter.flow.RateLimiter;
+import com.dpeng.gateway.core.helper.MetricsHelper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 限流: 按键 (客户端ip、请求头等) 的滑动窗口计数, 每个键在窗口内最多放行 capacity 个请求。
+ * 键的个数不受限制, 内存固定: 普通键用 count-min sketch 近似计数 (当前窗口和上一个窗口各一份, 按重叠比例折算),
+ * 只会高估不会低估, 采用保守更新减少误差; 计数达到容量一半的键升级为热点键, 之后单独精确计数且不再写入 sketch,
+ * 避免热点键抬高与它冲突的其他键的计数。热点键的个数有上限, 一个窗口内没有请求的热点键在窗口切换时移除。
+ */
+public class KeyedRateLimiter implements RateLimiter {
+
+    // count-min sketch 的哈希函数个数
+    private static final int DEPTH = 4;
+
+    // 每个哈希函数的计数器个数
+    private static final int WIDTH = 1 << 13;
+
+    private final Function<GatewayContext, String> keyResolver;
+
+    private final int capacity;
+
+    private final long windowNanos;
+
+    private final int hotThreshold;
+
+    private final int hotKeyCapacity;
+
+    private final long origin = System.nanoTime();
+
+    private final AtomicReference<Window> window;
+
+    private final ConcurrentHashMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    private final Counter rejected;
+
+    /**
+     * @param keyResolver 取请求的键, 返回 null 时不按键限流
+     * @param name        指标名后缀, 一般为路由id
+     */
+    public KeyedRateLimiter(Function<GatewayContext, String> keyResolver, int capacity, int windowSizeInMillis,
+                            int hotKeyCapacity, String name) {
+        this.keyResolver = keyResolver;
+        this.capacity = capacity;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowSizeInMillis));
+        this.hotThreshold = Math.max(1, capacity / 2);
+        this.hotKeyCapacity = hotKeyCapacity;
+        this.window = new AtomicReference<>(new Window(0, new AtomicIntegerArray(DEPTH * WIDTH), new AtomicIntegerArray(DEPTH * WIDTH)));
+        this.rejected = MetricsHelper.routeCounter("flow.key.rejected.", name);
+    }
+
+    @Override
+    public FilterResult tryConsume(GatewayContext context) {
+        String key = keyResolver.apply(context);
+        if (key == null) { // 取不到键的请求不按键限流
+            return FilterResult.CONTINUE;
+        }
+        long elapsed = System.nanoTime() - origin;
+        long epoch = elapsed / windowNanos;
+        // 上一个窗口仍在滑动窗口内的比例
+        double overlap = 1 - (double) (elapsed - epoch * windowNanos) / windowNanos;
+        Window current = window(epoch);
+
+        HotKey hotKey = hotKeys.get(key);
+        if (hotKey != null) {
+            if (!hotKey.tryAcquire(epoch, overlap, capacity)) {
+                return reject();
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        int hash = spread(key.hashCode());
+        int count = Integer.MAX_VALUE;
+        int previous = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            count = Math.min(count, current.counts.get(index));
+            previous = Math.min(previous, current.previous.get(index));
+        }
+        if (count + previous * overlap >= capacity) {
+            return reject();
+        }
+        // 保守更新: 只把小于 count + 1 的计数器加到 count + 1
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            for (int value; (value = current.counts.get(index)) <= count; ) {
+                if (current.counts.compareAndSet(index, value, count + 1)) {
+                    break;
+                }
+            }
+        }
+        if (count + 1 >= hotThreshold && hotKeys.size() < hotKeyCapacity) {
+            hotKeys.putIfAbsent(key, new HotKey(epoch, count + 1, previous));
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    /**
+     * 当前的热点键个数
+     */
+    public int getHotKeyCount() {
+        return hotKeys.size();
+    }
+
+    private FilterResult reject() {
+        rejected.inc();
+        throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * 取 epoch 对应的窗口, 进入新窗口时由 CAS 成功的线程切换 sketch 并清理不活跃的热点键
+     */
+    private Window window(long epoch) {
+        for (;;) {
+            Window current = window.get();
+            if (current.epoch >= epoch) {
+                return current;
+            }
+            AtomicIntegerArray previous = current.epoch == epoch - 1 ? current.counts : new AtomicIntegerArray(DEPTH * WIDTH);
+            Window next = new Window(epoch, new AtomicIntegerArray(DEPTH * WIDTH), previous);
+            if (window.compareAndSet(current, next)) {
+                hotKeys.values().removeIf(hotKey -> hotKey.epoch < epoch - 1);
+                return next;
+            }
+        }
+    }
+
+    private static int index(int hash, int i) {
+        int h = hash * (0x9E3779B9 + (i << 1)); // 每个哈希函数使用不同的乘数
+        return i * WIDTH + ((h ^ (h >>> 16)) & (WIDTH - 1));
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+
+    /**
+     * 一个窗口的 sketch 和上一个窗口的 sketch
+     */
+    private record Window(long epoch, AtomicIntegerArray counts, AtomicIntegerArray previous) {
+    }
+
+    /**
+     * 热点键的精确计数, 只有访问同一个键的请求竞争它的锁
+     */
+    private static class HotKey {
+
+        private volatile long epoch;
+
+        private int count;
+
+        private int previous;
+
+        private HotKey(long epoch, int count, int previous) {
+            this.epoch = epoch;
+            this.count = count;
+            this.previous = previous;
+        }
+
+        private synchronized boolean tryAcquire(long now, double overlap, int capacity) {
+            if (now > epoch) {
+                previous = now == epoch + 1 ? count : 0;
+                count = 0;
+                epoch = now;
+            }
+            if (count + previous * overlap >= capacity) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+    }
+
+}
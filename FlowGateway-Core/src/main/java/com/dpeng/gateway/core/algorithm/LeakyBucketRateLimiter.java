@@ -2,62 +2,143 @@ package com.dpeng.gateway.core.algorithm;
 
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.LimitedException;
+import com.dpeng.gateway.common.metrics.Counter;
+import com.dpeng.gateway.common.metrics.Histogram;
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.filter.flow.RateLimiter;
-import io.netty.channel.EventLoopGroup;
+import com.dpeng.gateway.core.helper.MetricsHelper;
+import io.netty.channel.EventLoop;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 限流: 漏桶算法;需要严格控制流量的情况，保证请求以恒定速率进入后端。
+ * 按虚拟时间实现: 记录下一个请求可以流出的时间, 请求到达时一次 CAS 领取自己的流出时间, 由此直接得到排队时间,
+ * 排队时间超过 maxQueueWait 或排队请求数达到容量时立即拒绝, 不会先排队再超时。
+ * 排队的请求挂在各自事件循环的本地队列上, 每个事件循环只有一个定时任务, 到期时把同一时间片 (1ms) 内到期的请求一起放行,
+ * 漏水间隔小于 1ms 时按批放行, 排队不足一个时间片的请求不挂起。
  */
 public class LeakyBucketRateLimiter implements RateLimiter {
 
-    private final int bucketCapacity; // 漏桶的容量
-    private final long leakInterval;  // 漏水的时间间隔
-    private final AtomicInteger currentWaterLevel; // 当前桶中的水量
-    private final Queue<GatewayContext> waitingQueue; // 等待队列
+    // 放行的时间粒度, 与事件循环定时任务的精度一致
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
-    public LeakyBucketRateLimiter(int capacity, long leakInterval, EventLoopGroup eventLoopGroup) {
+    private final int bucketCapacity; // 漏桶的容量, 即最多排队的请求数
+
+    private final long leakIntervalNanos; // 漏水的时间间隔
+
+    private final long maxQueueWaitNanos; // 最长排队时间
+
+    // 下一个请求可以流出的时间 (System.nanoTime)
+    private final AtomicLong nextLeakTime = new AtomicLong(System.nanoTime());
+
+    private final Map<EventLoop, LoopQueue> queues = new ConcurrentHashMap<>();
+
+    private final Histogram waitTime; // 挂起的请求实际排队的时间
+
+    private final Histogram queueDepth; // 请求到达时排在前面的请求数
+
+    private final Counter rejected;
+
+    /**
+     * @param name 指标名后缀, 一般为路由id
+     */
+    public LeakyBucketRateLimiter(int capacity, long leakIntervalNanos, long maxQueueWaitNanos, String name) {
         this.bucketCapacity = capacity;
-        this.leakInterval = leakInterval;
-        this.currentWaterLevel = new AtomicInteger(0);
-        this.waitingQueue = new ConcurrentLinkedQueue<>();
-        // 定时漏水的任务
-        startLeakTask(eventLoopGroup);
+        this.leakIntervalNanos = Math.max(1, leakIntervalNanos);
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+        this.waitTime = MetricsHelper.routeHistogram("flow.leaky.wait.nanos.", name);
+        this.queueDepth = MetricsHelper.routeHistogram("flow.leaky.queue.depth.", name);
+        this.rejected = MetricsHelper.routeCounter("flow.leaky.rejected.", name);
     }
 
-    //请求会以恒定的速度处理，不会因为流量突增导致系统崩溃;即使短时间有大量请求进入，也会排队等待处理。
-    private void startLeakTask(EventLoopGroup eventLoopGroup) {
-        // 使用 Netty 的定时任务来按频率漏出请求
-        eventLoopGroup.scheduleAtFixedRate(() -> {
-            if (!waitingQueue.isEmpty() && currentWaterLevel.get() > 0) {
-                GatewayContext gatewayContext = waitingQueue.poll();
-                if (gatewayContext != null) {
-                    // 重新提交请求到 Netty 事件循环
-                    gatewayContext.getNettyCtx().executor().execute(() -> {
-                        currentWaterLevel.decrementAndGet();
-                        gatewayContext.doFilter();
-                    });
-                }
+    @Override
+    public FilterResult tryConsume(GatewayContext context) {
+        long now = System.nanoTime();
+        long wait;
+        for (;;) {
+            long next = nextLeakTime.get();
+            wait = Math.max(next - now, 0);
+            long depth = wait / leakIntervalNanos;
+            if (depth >= bucketCapacity || wait > maxQueueWaitNanos) {
+                // 桶满或排队时间会超过上限, 直接拒绝请求
+                rejected.inc();
+                throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+            }
+            if (nextLeakTime.compareAndSet(next, now + wait + leakIntervalNanos)) {
+                queueDepth.record(depth);
+                break;
             }
-        }, leakInterval, leakInterval, TimeUnit.MILLISECONDS);
+        }
+        if (wait < TICK_NANOS) {
+            return FilterResult.CONTINUE;
+        }
+        EventLoop eventLoop = context.getNettyCtx().channel().eventLoop();
+        queues.computeIfAbsent(eventLoop, LoopQueue::new).offer(new Waiter(context, now, now + wait));
+        return FilterResult.SUSPEND;
     }
 
-    //请求不会立即执行，而是排队，等待 startLeakTask 逐个处理。
-    @Override
-    public void tryConsume(GatewayContext context) {
-        if (currentWaterLevel.get() < bucketCapacity) {
-            // 如果桶未满，将请求加入等待队列
-            currentWaterLevel.incrementAndGet();
-            waitingQueue.offer(context);
-        } else {
-            // 如果桶满，直接拒绝请求
-            throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+    /**
+     * 当前排队的请求数
+     */
+    public long getQueueDepth() {
+        return Math.max(nextLeakTime.get() - System.nanoTime(), 0) / leakIntervalNanos;
+    }
+
+    private record Waiter(GatewayContext context, long enqueueTime, long leakTime) {
+    }
+
+    /**
+     * 事件循环本地的等待队列, 只在所属事件循环中访问。
+     * 流出时间在领取时单调递增, 同一事件循环中按到达顺序入队, 队列按流出时间有序
+     */
+    private class LoopQueue {
+
+        private final EventLoop eventLoop;
+
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        private LoopQueue(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        private void offer(Waiter waiter) {
+            if (!eventLoop.inEventLoop()) {
+                eventLoop.execute(() -> offer(waiter));
+                return;
+            }
+            waiters.offer(waiter);
+            if (waiters.size() == 1) { // 队列原来为空, 没有待执行的放行任务
+                schedule(waiter.leakTime);
+            }
         }
+
+        private void schedule(long leakTime) {
+            eventLoop.schedule(this::drain, Math.max(leakTime - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 放行当前时间片内到期的所有请求, 再按下一个请求的流出时间重新定时
+         */
+        private void drain() {
+            long now = System.nanoTime();
+            Waiter waiter;
+            while ((waiter = waiters.peek()) != null && waiter.leakTime - now < TICK_NANOS) {
+                waiters.poll();
+                waitTime.record(now - waiter.enqueueTime);
+                // 从暂停处继续执行过滤器链
+                waiter.context.resume();
+            }
+            if (waiter != null) {
+                schedule(waiter.leakTime);
+            }
+        }
+
     }
 
 }
@@ -4,48 +4,79 @@ package com.dpeng.gateway.core.algorithm;
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.LimitedException;
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.filter.flow.RateLimiter;
 
-import java.time.Instant;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * 限流: 滑动窗口;适用于统计类限流
+ * 按滑动窗口计数实现: 窗口切成 BUCKETS 个时间片, 环形数组记录每个时间片放行的请求数,
+ * 窗口内的请求数 = 完整落在窗口内的时间片之和 + 最早的时间片按仍在窗口内的比例折算。
+ * 内存与容量无关, 放行只需读一遍环形数组再 CAS 当前时间片, 不加锁、不分配对象;
+ * 并发放行时检查和计数不是原子的, 窗口内的请求数最多超出同时放行的线程数。
  */
 public class SlidingWindowRateLimiter implements RateLimiter {
 
+    // 每个窗口的时间片个数
+    private static final int BUCKETS = 10;
+
     private final int capacity; // 最大允许请求数
-    private final int windowSizeInMillis; // 窗口大小，单位：毫秒
-    private final Deque<Long> requestTimestamps; // 存储每个请求的时间戳
+
+    private final long bucketNanos; // 时间片长度, 单位 ns
+
+    private final long origin = System.nanoTime();
+
+    // 槽位高 32 位为时间片序号 (只比较相等, 溢出不影响), 低 32 位为该时间片放行的请求数
+    // 多保留一个槽位, 存放部分落在窗口内的最早时间片
+    private final AtomicLongArray slots = new AtomicLongArray(BUCKETS + 1);
 
     public SlidingWindowRateLimiter(int capacity, int windowSizeInMillis) {
         this.capacity = capacity;
-        this.windowSizeInMillis = windowSizeInMillis;
-        this.requestTimestamps = new LinkedList<>();
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowSizeInMillis)) / BUCKETS);
     }
 
     @Override
-    public synchronized void tryConsume(GatewayContext context) {
-        //先 获取当前时间。
-        long now = Instant.now().toEpochMilli();
-        //清除当前时间为止的前一秒(滑动窗口大小内)的所有请求, 因为只需要判断滑动窗口内的所有请求是否小于最大请求数,小于则放行, 否则返回异常
-        cleanOldRequests(now);
-        //判断当前窗口内请求数是否超限
-        if (requestTimestamps.size() < capacity) {
-            //未超限：记录当前请求时间并继续执行 doFilter() 处理请求。
-            requestTimestamps.addLast(now);
-            context.doFilter();
-        } else {
+    public FilterResult tryConsume(GatewayContext context) {
+        long elapsed = System.nanoTime() - origin;
+        long sequence = elapsed / bucketNanos;
+        // 最早的时间片仍在窗口内的比例
+        double overlap = 1 - (double) (elapsed - sequence * bucketNanos) / bucketNanos;
+        if (count(sequence, overlap) >= capacity) {
             //超限：抛出 LimitedException。
             throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
         }
+        int index = (int) (sequence % slots.length());
+        for (;;) {
+            long slot = slots.get(index);
+            long next = tag(slot) == (int) sequence ? slot + 1 : pack(sequence, 1); // 过期的时间片从 1 重新计数
+            if (slots.compareAndSet(index, slot, next)) {
+                return FilterResult.CONTINUE;
+            }
+        }
     }
 
-    private void cleanOldRequests(long currentTime) {
-        while (!requestTimestamps.isEmpty() && (currentTime - requestTimestamps.peekFirst()) > windowSizeInMillis) {
-            requestTimestamps.pollFirst();
+    /**
+     * 当前窗口内的请求数
+     */
+    private double count(long sequence, double overlap) {
+        double count = 0;
+        for (int i = 0; i <= BUCKETS && i <= sequence; i++) {
+            long slot = slots.get((int) ((sequence - i) % slots.length()));
+            if (tag(slot) == (int) (sequence - i)) {
+                count += i == BUCKETS ? (slot & 0xFFFFFFFFL) * overlap : (slot & 0xFFFFFFFFL);
+            }
         }
+        return count;
+    }
+
+    private static int tag(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static long pack(long sequence, long count) {
+        return (sequence << 32) | count;
     }
 
 }
@@ -4,50 +4,54 @@ package com.dpeng.gateway.core.algorithm;
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.LimitedException;
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.filter.flow.RateLimiter;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 限流: 令牌桶算法;适用场景：突发流量的情况（能短时间内允许一些突发请求）。
+ * 按 GCRA (通用信元速率算法) 实现: 只记录下一个令牌的理论到达时间 (纳秒), 取令牌时按当前时间惰性计算补充,
+ * 一次 CAS 完成, 没有定时任务和后台线程, 限流器随过滤器链重建时不会泄漏线程。
  */
 public class TokenBucketRateLimiter implements RateLimiter {
 
-    private final int capacity; // 桶的容量
-    private final int refillRate; // 令牌生成速率
-    private final AtomicInteger tokens; // 当前令牌数量
+    private final long emissionInterval; // 生成一个令牌的间隔, 单位 ns
 
-    public TokenBucketRateLimiter(int capacity, int refillRatePerSecond) {
-        this.capacity = capacity;
-        this.refillRate = refillRatePerSecond;
-        this.tokens = new AtomicInteger(0);//tokens 初始值为 0（刚创建时桶是空的）
-        startRefilling();//调用 startRefilling() 开始定期补充令牌。
-    }
+    private final long tolerance; // 桶满时允许的突发, 即 capacity 个令牌的生成时间
 
-    @Override
-    public void tryConsume(GatewayContext context) {
-        //先获取当前令牌数并减少 1。
-        if (tokens.getAndDecrement() > 0) {
-            //如果桶里有令牌（>0），则允许请求通过，执行 context.doFilter() 继续请求处理。
-            context.doFilter();
-        } else {
-            //如果没有令牌（<=0），则立即拒绝请求, 并回复为0
-            tokens.incrementAndGet();
-            throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
-        }
+    // 理论到达时间: 桶中令牌数 = (tolerance - max(tat - now, 0)) / emissionInterval
+    private final AtomicLong theoreticalArrivalTime;
+
+    public TokenBucketRateLimiter(int capacity, int refillRatePerSecond) {
+        this(capacity, refillRatePerSecond, capacity);
     }
 
-    private void startRefilling() {
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(this::refillTokens, 0, 1000, TimeUnit.MILLISECONDS);
+    /**
+     * @param initialBurst 创建时桶中的令牌数, 超过 capacity 时按 capacity
+     */
+    public TokenBucketRateLimiter(int capacity, int refillRatePerSecond, int initialBurst) {
+        this.emissionInterval = Math.max(1, TimeUnit.SECONDS.toNanos(1) / Math.max(1, refillRatePerSecond));
+        this.tolerance = emissionInterval * Math.max(1, capacity);
+        long missing = Math.max(0, Math.max(1, capacity) - Math.max(0, initialBurst));
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime() + missing * emissionInterval);
     }
 
-    private void refillTokens() {
-        //在当前令牌数基础上增加 refillRate 个令牌, 确保令牌数不超过桶的最大容量（capacity）
-        tokens.set(Math.min(capacity, tokens.get() + refillRate));
+    @Override
+    public FilterResult tryConsume(GatewayContext context) {
+        long now = System.nanoTime();
+        for (;;) {
+            long tat = theoreticalArrivalTime.get();
+            long next = Math.max(tat - now, 0) + now + emissionInterval; // 用差值比较, 避免 nanoTime 溢出
+            if (next - now > tolerance) {
+                // 桶中没有令牌, 立即拒绝请求
+                throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                return FilterResult.CONTINUE;
+            }
+        }
     }
 
 }
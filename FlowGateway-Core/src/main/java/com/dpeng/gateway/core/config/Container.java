@@ -1,6 +1,8 @@
 package com.dpeng.gateway.core.config;
 
 import com.dpeng.gateway.config.config.Config;
+import com.dpeng.gateway.config.helper.RouteResolver;
+import com.dpeng.gateway.core.filter.BlockingFilterExecutor;
 import com.dpeng.gateway.core.netty.NettyHttpClient;
 import com.dpeng.gateway.core.netty.NettyHttpServer;
 import com.dpeng.gateway.core.netty.processor.NettyCoreProcessor;
@@ -17,8 +19,9 @@ public class Container implements LifeCycle {
 
 
     public Container(Config config) {
+        RouteResolver.initCache(config.getRouteCacheSize());
         this.nettyHttpServer = new NettyHttpServer(config, new NettyCoreProcessor());
-        this.nettyHttpClient = new NettyHttpClient(config);
+        this.nettyHttpClient = new NettyHttpClient(config, nettyHttpServer);
     }
 
     @Override
@@ -33,6 +36,7 @@ public class Container implements LifeCycle {
         if (!start.get()) return;
         nettyHttpServer.shutdown();
         nettyHttpClient.shutdown();
+        BlockingFilterExecutor.getInstance().shutdown();
     }
 
     @Override
@@ -1,13 +1,21 @@
 package com.dpeng.gateway.core.context;
 
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.exception.GatewayException;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.core.filter.BlockingFilterExecutor;
 import com.dpeng.gateway.core.filter.FilterChain;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.helper.ContextHelper;
+import com.dpeng.gateway.core.helper.ResponseHelper;
 import com.dpeng.gateway.core.request.GatewayRequest;
 import com.dpeng.gateway.core.response.GatewayResponse;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Data
 public class GatewayContext {
 
@@ -41,6 +49,36 @@ public class GatewayContext {
      */
     private boolean isDoPreFilter = true;
 
+    /**
+     * 执行循环是否正在运行, 只在事件循环中访问
+     */
+    private boolean running;
+
+    /**
+     * 执行循环运行期间收到的 resume 请求
+     */
+    private boolean resumePending;
+
+    /**
+     * 是否有阻塞过滤器正在其他线程中执行
+     */
+    private boolean blocking;
+
+    /**
+     * 各阶段开始的时间戳 (System.nanoTime), 0 表示未到达该阶段, 写回响应时由 MetricsHelper 统计各阶段耗时
+     */
+    private long requestStartNanos; // 收到请求头
+
+    private long filterStartNanos; // 开始执行前置过滤器
+
+    private long upstreamStartNanos; // 发起下游请求, 重试时为最后一次
+
+    private long upstreamConnectedNanos; // 取得下游连接
+
+    private long upstreamFirstByteNanos; // 收到下游响应首字节
+
+    private long postFilterStartNanos; // 开始执行后置过滤器
+
     public GatewayContext(ChannelHandlerContext nettyCtx, GatewayRequest request,
                           RouteDefinition route, boolean keepAlive) {
         this.nettyCtx = nettyCtx;
@@ -49,19 +87,121 @@ public class GatewayContext {
         this.keepAlive = keepAlive;
     }
 
+    /**
+     * 开始执行过滤器链, 在所属事件循环中调用, 前置过滤器抛出的异常交给调用方处理
+     */
     public void doFilter() {
-        int size = filterChain.size();
-        if (isDoPreFilter) {
-            filterChain.doPreFilter(curFilterIndex++, this);
-            if (curFilterIndex == size) {
-                isDoPreFilter = false;
-                curFilterIndex--;
-            }
-        } else {
-            filterChain.doPostFilter(curFilterIndex--, this);
-            if (curFilterIndex < 0) {
-                ContextHelper.writeBackResponse(this);
+        filterStartNanos = System.nanoTime();
+        execute(null);
+    }
+
+    /**
+     * 异步过滤器完成后从暂停处继续执行过滤器链, 可以在任意线程调用, 执行总是切回 channel 所属的事件循环
+     */
+    public void resume() {
+        EventLoop eventLoop = nettyCtx.channel().eventLoop();
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(this::resume);
+            return;
+        }
+        if (running || blocking) { // 过滤器返回 SUSPEND 之前就完成了异步操作, 由当前的执行循环继续
+            resumePending = true;
+            return;
+        }
+        executeSafely(null);
+    }
+
+    /**
+     * 阻塞过滤器执行完后, 切回事件循环按它的结果继续执行过滤器链
+     */
+    public void resume(FilterResult result) {
+        EventLoop eventLoop = nettyCtx.channel().eventLoop();
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> resume(result));
+            return;
+        }
+        blocking = false;
+        executeSafely(result);
+    }
+
+    /**
+     * 异步执行的过滤器失败, 切回事件循环写回错误响应
+     */
+    public void fail(Throwable t) {
+        fail(t, t instanceof GatewayException e ? e.getCode() : ResponseCode.INTERNAL_ERROR);
+    }
+
+    /**
+     * 下游请求等异步操作失败, 切回事件循环按 code 写回错误响应, 可以在任意线程调用
+     */
+    public void fail(Throwable t, ResponseCode code) {
+        EventLoop eventLoop = nettyCtx.channel().eventLoop();
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> fail(t, code));
+            return;
+        }
+        blocking = false;
+        log.error("filter chain error: {}", request.getPath(), t);
+        throwable = t;
+        response = ResponseHelper.buildGatewayResponse(code);
+        ContextHelper.writeBackResponse(this);
+    }
+
+    private void executeSafely(FilterResult result) {
+        try {
+            execute(result);
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    /**
+     * 过滤器链的执行循环, 按过滤器返回的结果推进, 不随过滤器数量递归加深调用栈。
+     * resumed 为阻塞过滤器在其他线程中的执行结果, 此时游标仍指向该过滤器
+     */
+    private void execute(FilterResult resumed) {
+        running = true;
+        try {
+            int size = filterChain.size();
+            FilterResult result = resumed;
+            while (true) {
+                if (result == null) {
+                    if (isDoPreFilter && curFilterIndex >= size) { // 前置过滤器执行完, 进入后置阶段
+                        isDoPreFilter = false;
+                        curFilterIndex = size - 1;
+                        postFilterStartNanos = System.nanoTime();
+                    }
+                    if (!isDoPreFilter && curFilterIndex < 0) {
+                        ContextHelper.writeBackResponse(this);
+                        return;
+                    }
+                    resumePending = false;
+                    if (filterChain.get(curFilterIndex).isBlocking()) { // 交给阻塞执行器, 完成后通过 resume(result) 继续
+                        blocking = true;
+                        BlockingFilterExecutor.getInstance().execute(this, filterChain, curFilterIndex, isDoPreFilter);
+                        return;
+                    }
+                    result = isDoPreFilter ? filterChain.doPreFilter(curFilterIndex, this)
+                            : filterChain.doPostFilter(curFilterIndex, this);
+                }
+                if (result == FilterResult.COMPLETE) {
+                    if (isDoPreFilter) {
+                        isDoPreFilter = false; // 从当前过滤器开始执行后置过滤器
+                        postFilterStartNanos = System.nanoTime();
+                    } else {
+                        curFilterIndex = -1;
+                    }
+                    result = null;
+                    continue;
+                }
+                curFilterIndex += isDoPreFilter ? 1 : -1;
+                if (result == FilterResult.SUSPEND && !resumePending) {
+                    return;
+                }
+                result = null;
             }
+        } finally {
+            running = false;
         }
     }
 
@@ -0,0 +1,98 @@
+package com.dpeng.gateway.core.filter;
+
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.metrics.Histogram;
+import com.dpeng.gateway.core.context.GatewayContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 阻塞过滤器的执行器, 声明了 isBlocking 的过滤器不在事件循环中执行, 而是交给这里的线程执行, 完成后切回事件循环继续过滤器链。
+ * 运行在 Java 21 及以上时使用虚拟线程, 否则退化为有界线程池: 线程数和排队数都有上限, 排满时直接以 503 拒绝请求,
+ * 避免每个排队的请求都占住一个平台线程。
+ * 每种过滤器按 getMaxConcurrency 限制同时执行的数量, 超出的请求排队等待, 排队时间记录到过滤器链构建时取好的 filter.blocking.queue.nanos.<过滤器名> 直方图。
+ */
+@Slf4j
+public class BlockingFilterExecutor {
+
+    // 没有虚拟线程时线程池的线程数
+    private static final int PLATFORM_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+
+    // 没有虚拟线程时线程池最多排队的请求数
+    private static final int PLATFORM_QUEUE_CAPACITY = 1024;
+
+    private static final BlockingFilterExecutor INSTANCE = new BlockingFilterExecutor();
+
+    private final ExecutorService executor = createExecutor();
+
+    private final Map<String /* 过滤器名 */, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+
+    private BlockingFilterExecutor() {
+    }
+
+    public static BlockingFilterExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 在阻塞线程中执行过滤器, 完成后以过滤器的结果恢复过滤器链
+     */
+    public void execute(GatewayContext context, FilterChain chain, int index, boolean preFilter) {
+        Filter filter = chain.get(index);
+        Semaphore semaphore = semaphoreMap.computeIfAbsent(filter.mark(), k -> new Semaphore(Math.max(1, filter.getMaxConcurrency())));
+        Histogram queueTime = chain.getQueueLatency(index);
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    semaphore.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    context.fail(e);
+                    return;
+                }
+                queueTime.record(System.nanoTime() - submitted);
+                FilterResult result;
+                try {
+                    result = preFilter ? chain.doPreFilter(index, context) : chain.doPostFilter(index, context);
+                } catch (Throwable t) {
+                    context.fail(t);
+                    return;
+                } finally {
+                    semaphore.release();
+                }
+                context.resume(result);
+            });
+        } catch (RejectedExecutionException e) { // 线程池已排满
+            context.fail(e, ResponseCode.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 通过反射使用虚拟线程执行器, 编译目标为 Java 17, 运行时版本不支持时使用有界线程池
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("blocking filters run on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger index = new AtomicInteger();
+            log.info("virtual threads unavailable, blocking filters run on a pool of {} threads", PLATFORM_THREADS);
+            return new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(PLATFORM_QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "blocking-filter-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+}
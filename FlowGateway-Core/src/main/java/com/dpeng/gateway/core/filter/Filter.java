@@ -1,15 +1,46 @@
 package com.dpeng.gateway.core.filter;
 
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
 
+import static com.dpeng.gateway.common.constant.FilterConstant.BLOCKING_FILTER_MAX_CONCURRENCY;
+
 public interface Filter {
 
-    void doPreFilter(GatewayContext context);
+    /**
+     * 前置过滤, 返回 CONTINUE 继续执行下一个过滤器, 发起异步操作时返回 SUSPEND 并在完成后调用 context.resume()
+     */
+    FilterResult doPreFilter(GatewayContext context);
 
-    void doPostFilter(GatewayContext context);
+    /**
+     * 后置过滤, 按前置过滤的相反顺序执行
+     */
+    FilterResult doPostFilter(GatewayContext context);
 
     String mark(); // 标识唯一的过滤器
 
     int getOrder();
 
+    /**
+     * 为路由编译出专用的过滤器实例, 路由配置在此时解析为类型化的配置对象, 请求时不再解析。
+     * 不依赖路由配置的过滤器直接返回自身, 在该路由上不生效的过滤器返回 null, 不会加入过滤器链。
+     */
+    default Filter compile(RouteDefinition route) {
+        return this;
+    }
+
+    /**
+     * 过滤器是否会阻塞 (同步 I/O 等), 阻塞的过滤器在 BlockingFilterExecutor 的线程中执行, 不占用事件循环
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+
+    /**
+     * 阻塞过滤器同时执行的最大数量, 同名过滤器共享
+     */
+    default int getMaxConcurrency() {
+        return BLOCKING_FILTER_MAX_CONCURRENCY;
+    }
+
 }
@@ -1,52 +1,83 @@
 package com.dpeng.gateway.core.filter;
 
+import com.dpeng.gateway.common.metrics.Histogram;
+import com.dpeng.gateway.common.metrics.MetricRegistry;
 import com.dpeng.gateway.core.context.GatewayContext;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
-import java.util.List;
 
+/**
+ * 路由编译后的过滤器链, 构建后不再修改, 可被该路由的所有请求并发共享。
+ * 每个过滤器的执行耗时 (不含其发起的异步操作) 记录到 filter.pre.nanos.<过滤器名> 和 filter.post.nanos.<过滤器名> 直方图,
+ * 阻塞过滤器在阻塞执行器中的排队时间记录到 filter.blocking.queue.nanos.<过滤器名> 直方图
+ */
 @Slf4j
 public class FilterChain {
 
-    private final List<Filter> filters = new ArrayList<>();
+    private final Filter[] filters;
 
-    public FilterChain add(Filter filter) {
-        filters.add(filter);
-        return this;
+    // 与 filters 一一对应, 构建时取好, 执行时不再按名字查找
+    private final Histogram[] preLatencies;
+
+    private final Histogram[] postLatencies;
+
+    // 非阻塞过滤器对应的位置为 null
+    private final Histogram[] queueLatencies;
+
+    public FilterChain(Collection<Filter> filters) {
+        this.filters = filters.stream().sorted(Comparator.comparingInt(Filter::getOrder)).toArray(Filter[]::new);
+        this.preLatencies = new Histogram[this.filters.length];
+        this.postLatencies = new Histogram[this.filters.length];
+        this.queueLatencies = new Histogram[this.filters.length];
+        MetricRegistry registry = MetricRegistry.getInstance();
+        for (int i = 0; i < this.filters.length; i++) {
+            preLatencies[i] = registry.histogram("filter.pre.nanos." + this.filters[i].mark());
+            postLatencies[i] = registry.histogram("filter.post.nanos." + this.filters[i].mark());
+            if (this.filters[i].isBlocking()) {
+                queueLatencies[i] = registry.histogram("filter.blocking.queue.nanos." + this.filters[i].mark());
+            }
+        }
     }
 
-    public FilterChain add(List<Filter> filter) {
-        filters.addAll(filter);
-        return this;
+    public int size() {
+        return filters.length;
     }
 
-    public void sort() {
-        filters.sort(Comparator.comparingInt(Filter::getOrder));
+    public Filter get(int index) {
+        return filters[index];
     }
 
-    public int size() {
-        return filters.size();
+    /**
+     * 阻塞过滤器的排队时间直方图
+     */
+    public Histogram getQueueLatency(int index) {
+        return queueLatencies[index];
     }
 
     /**
      * 执行前置过滤器
      */
-    public void doPreFilter(int index, GatewayContext context) {
-        if (index < filters.size() && index >= 0) {
-            filters.get(index).doPreFilter(context);
+    public FilterResult doPreFilter(int index, GatewayContext context) {
+        long start = System.nanoTime();
+        try {
+            return filters[index].doPreFilter(context);
+        } finally {
+            preLatencies[index].record(System.nanoTime() - start);
         }
     }
 
     /**
      * 执行后置过滤器
      */
-    public void doPostFilter(int index, GatewayContext context) {
-        if (index < filters.size() && index >= 0) {
-            filters.get(index).doPostFilter(context);
+    public FilterResult doPostFilter(int index, GatewayContext context) {
+        long start = System.nanoTime();
+        try {
+            return filters[index].doPostFilter(context);
+        } finally {
+            postLatencies[index].record(System.nanoTime() - start);
         }
     }
 
-
 }
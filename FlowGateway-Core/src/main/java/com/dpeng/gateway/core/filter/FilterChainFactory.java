@@ -1,92 +1,116 @@
 package com.dpeng.gateway.core.filter;
 
 import cn.hutool.core.collection.ConcurrentHashSet;
+import com.dpeng.gateway.common.plugin.PluginLoader;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.plugin.CorePluginRegistry;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.ServiceLoader;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.dpeng.gateway.common.constant.FilterConstant.*;
 
 /**
- * 过滤器链工厂, 通过网关上下文为对应的服务创建过滤器链, 可同时存在多个服务的过滤器链
+ * 过滤器链工厂, 为每个路由编译一条过滤器链, 过滤器在编译时解析好各自的路由配置。
+ * 过滤器链只在路由定义变化时重新编译, 配置推送中内容未变的路由继续使用原来的过滤器链 (包括限流器等状态)。
  */
 @Slf4j
 public class FilterChainFactory {
     //所有类型的过滤器对象Map,通过唯一标识获取对应的过滤器对象
-    private static final Map<String, Filter> filterMap = new HashMap<>();
+    private static final Map<String, Filter> filterMap = PluginLoader.load(Filter.class, CorePluginRegistry.INSTANCE, Filter::mark);
 
-    //服务对应的过滤器链,每个服务对应一个过滤器链,过滤器类型分三种: PreFilter, Filter(获取动态配置的过滤器), PostFilter
-    private static final Map<String, FilterChain> filterChainMap = new ConcurrentHashMap<>();
+    //路由对应的过滤器链,每个路由对应一个过滤器链,过滤器类型分三种: PreFilter, Filter(获取动态配置的过滤器), PostFilter
+    private static final Map<String /* 路由id */, CompiledChain> filterChainMap = new ConcurrentHashMap<>();
 
     private static final Set<String> addListener = new ConcurrentHashSet<>();
 
-    //类加载时执行, 通过SPI(Service Provider Interface)机制动态加载实现类
-    static {
-        ServiceLoader<Filter> serviceLoader = ServiceLoader.load(Filter.class);
-        for (Filter filter : serviceLoader) {
-            filterMap.put(filter.mark(), filter);
-            log.info("load filter success: {}", filter);
+    public static void buildFilterChain(GatewayContext ctx) {
+        ctx.setFilterChain(getFilterChain(ctx.getRoute()));
+    }
+
+    public static FilterChain getFilterChain(RouteDefinition route) {
+        CompiledChain compiled = filterChainMap.get(route.getId());
+        if (compiled != null && compiled.route == route) {
+            return compiled.chain;
         }
+        return filterChainMap.compute(route.getId(), (id, old) -> {
+            if (old != null && (old.route == route || old.route.equals(route))) {
+                return old.route == route ? old : new CompiledChain(route, old.chain); // 内容未变, 不重新编译
+            }
+            listen(route.getServiceName());
+            return new CompiledChain(route, compile(route));
+        }).chain;
     }
 
+    /**
+     * 编译路由的过滤器链
+     */
+    public static FilterChain compile(RouteDefinition route) {
+        List<Filter> filters = new ArrayList<>();
+        addPreFilter(filters, route);
+        addFilter(filters, route);
+        addPostFilter(filters, route);
+        return new FilterChain(filters);
+    }
 
-    public static void buildFilterChain(GatewayContext ctx) {
-        String serviceName = ctx.getRoute().getServiceName();
-        FilterChain filterChain = filterChainMap.computeIfAbsent(serviceName, name -> {
-            FilterChain chain = new FilterChain();
-            addPreFilter(chain);
-            addFilter(chain, ctx.getRoute().getFilterConfigs());
-            addPostFilter(chain);
-            chain.sort();
-            //监听服务的路由变更
-            if (!addListener.contains(serviceName)) {
-                //DynamicConfigManager.getInstance().addRouteListener(...) 监听 Nacos / 配置中心的变更。
-                DynamicConfigManager.getInstance().addRouteListener(
-                        //当某个服务的路由信息变更（例如：过滤器规则改变），就会触发回调函数
-                        serviceName, newRoute -> filterChainMap.remove(newRoute.getServiceName())
-                );
-                addListener.add(serviceName);
-            }
-            return chain;
-        });
-        ctx.setFilterChain(filterChain);
+    /**
+     * 监听服务的路由变更, 路由被修改或删除时丢弃编译好的过滤器链
+     */
+    private static void listen(String serviceName) {
+        if (serviceName != null && addListener.add(serviceName)) {
+            DynamicConfigManager.getInstance().addRouteListener(serviceName, changedRoute -> {
+                CompiledChain compiled = filterChainMap.get(changedRoute.getId());
+                if (compiled != null && !compiled.route.equals(changedRoute)) {
+                    filterChainMap.remove(changedRoute.getId(), compiled);
+                }
+                if (DynamicConfigManager.getInstance().getRouteById(changedRoute.getId()) == null) {
+                    filterChainMap.remove(changedRoute.getId());
+                }
+            });
+        }
     }
 
-    private static void addPreFilter(FilterChain chain) {
-        addFilterIfPresent(chain, CORS_FILTER_NAME);
-        addFilterIfPresent(chain, FLOW_FILTER_NAME);
-        addFilterIfPresent(chain, GRAY_FILTER_NAME);
-        addFilterIfPresent(chain, LOAD_BALANCE_FILTER_NAME);
+    private static void addPreFilter(List<Filter> filters, RouteDefinition route) {
+        addFilterIfPresent(filters, route, CORS_FILTER_NAME);
+        addFilterIfPresent(filters, route, FLOW_FILTER_NAME);
+        addFilterIfPresent(filters, route, GRAY_FILTER_NAME);
+        addFilterIfPresent(filters, route, LOAD_BALANCE_FILTER_NAME);
     }
 
-    private static void addFilter(FilterChain chain, Set<RouteDefinition.FilterConfig> filterConfigs) {
+    private static void addFilter(List<Filter> filters, RouteDefinition route) {
+        Set<RouteDefinition.FilterConfig> filterConfigs = route.getFilterConfigs();
         if (filterConfigs == null || filterConfigs.isEmpty()) return;
         for (RouteDefinition.FilterConfig filterConfig : filterConfigs) {
-            if (!addFilterIfPresent(chain, filterConfig.getName())) {
+            if (filters.stream().anyMatch(filter -> filter.mark().equals(filterConfig.getName()))) continue;
+            if (!addFilterIfPresent(filters, route, filterConfig.getName())) {
                 log.info("not found filter: {}", filterConfig.getName());
             }
         }
     }
 
-    private static void addPostFilter(FilterChain chain) {
-        addFilterIfPresent(chain, ROUTE_FILTER_NAME);
+    private static void addPostFilter(List<Filter> filters, RouteDefinition route) {
+        addFilterIfPresent(filters, route, ROUTE_FILTER_NAME);
     }
 
-    private static boolean addFilterIfPresent(FilterChain chain, String filterName) {
+    private static boolean addFilterIfPresent(List<Filter> filters, RouteDefinition route, String filterName) {
         Filter filter = filterMap.get(filterName);
-        if (null != filter) {
-            chain.add(filter);
-            return true;
+        if (null == filter) {
+            return false;
         }
-        return false;
+        Filter compiled = filter.compile(route);
+        if (compiled != null) {
+            filters.add(compiled);
+        }
+        return true;
     }
 
+    /**
+     * 编译好的过滤器链及编译时的路由定义
+     */
+    private record CompiledChain(RouteDefinition route, FilterChain chain) {
+    }
 
 }
@@ -0,0 +1,23 @@
+package com.dpeng.gateway.core.filter;
+
+/**
+ * 过滤器的执行结果, 由 GatewayContext 的执行器据此推进过滤器链
+ */
+public enum FilterResult {
+
+    /**
+     * 继续执行下一个过滤器
+     */
+    CONTINUE,
+
+    /**
+     * 过滤器发起了异步操作, 执行器暂停, 异步操作完成后由过滤器调用 GatewayContext.resume() 从下一个过滤器继续
+     */
+    SUSPEND,
+
+    /**
+     * 过滤器已生成响应; 前置阶段返回时跳过剩余的前置过滤器, 从当前过滤器开始执行后置过滤器, 后置阶段返回时跳过剩余的后置过滤器直接写回
+     */
+    COMPLETE
+
+}
@@ -1,57 +1,73 @@
 package com.dpeng.gateway.core.filter.flow;
 
 
-import cn.hutool.core.collection.ConcurrentHashSet;
-import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
+import com.alibaba.nacos.common.utils.StringUtils;
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.util.FilterUtil;
+import com.dpeng.gateway.core.algorithm.ClusterRateLimiter;
+import com.dpeng.gateway.core.algorithm.KeyedRateLimiter;
 import com.dpeng.gateway.core.algorithm.LeakyBucketRateLimiter;
 import com.dpeng.gateway.core.algorithm.SlidingWindowRateLimiter;
 import com.dpeng.gateway.core.algorithm.TokenBucketRateLimiter;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.Filter;
-import io.netty.channel.EventLoop;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.filter.flow.cluster.QuotaCoordinatorManager;
+import io.netty.handler.codec.http.cookie.Cookie;
+import lombok.extern.slf4j.Slf4j;
 
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.dpeng.gateway.common.constant.FilterConstant.FLOW_FILTER_NAME;
 import static com.dpeng.gateway.common.constant.FilterConstant.FLOW_FILTER_ORDER;
 
+@Slf4j
+@GatewayPlugin(value = Filter.class, name = FLOW_FILTER_NAME)
 public class FlowFilter implements Filter {
 
-    private final ConcurrentHashMap<String /* 服务名 */, RateLimiter> rateLimiterMap = new ConcurrentHashMap<>();
+    // 路由的限流器, 编译时按流控配置创建, 路由变化时随过滤器链一起重建; SPI 加载的原型实例为 null
+    // 每个路由单独计数, 不在同一服务的多个路由之间共享
+    private final RateLimiter rateLimiter;
 
-    private final Set<String> addListener = new ConcurrentHashSet<>();
+    // 按键 (客户端ip、请求头等) 的限流器, 没有配置键的来源时为 null
+    private final RateLimiter keyedRateLimiter;
+
+    public FlowFilter() {
+        this.rateLimiter = null;
+        this.keyedRateLimiter = null;
+    }
+
+    private FlowFilter(RouteDefinition.FlowFilterConfig flowFilterConfig, RouteDefinition route) {
+        String routeId = route.getId();
+        this.rateLimiter = initRateLimiter(flowFilterConfig, route);
+        Function<GatewayContext, String> keyResolver = keyResolver(flowFilterConfig, routeId);
+        this.keyedRateLimiter = keyResolver == null ? null
+                : new KeyedRateLimiter(keyResolver, flowFilterConfig.getKeyCapacity(),
+                flowFilterConfig.getKeyWindow(), flowFilterConfig.getHotKeyCapacity(), routeId);
+    }
 
     @Override
-    public void doPreFilter(GatewayContext context) {
-
-        RouteDefinition.FlowFilterConfig flowFilterConfig = Optional
-                .ofNullable(FilterUtil.findFilterConfigByClass(context.getRoute().getFilterConfigs(), FLOW_FILTER_NAME, RouteDefinition.FlowFilterConfig.class))
-                .orElse(new RouteDefinition.FlowFilterConfig());
-
-        if (!flowFilterConfig.isEnabled()) { // 如果没有开启流控
-            context.doFilter();
-        } else {
-            String serviceName = context.getRequest().getServiceDefinition().getServiceName();
-            RateLimiter rateLimiter = rateLimiterMap.computeIfAbsent(serviceName, name -> {
-                if (!addListener.contains(name)) {
-                    DynamicConfigManager.getInstance().addRouteListener(name, newRoute -> {
-                        rateLimiterMap.remove(newRoute.getServiceName());
-                    });
-                    addListener.add(name);
-                }
-                return initRateLimiter(flowFilterConfig, context.getNettyCtx().channel().eventLoop());
-            });
-            rateLimiter.tryConsume(context);
+    public Filter compile(RouteDefinition route) {
+        RouteDefinition.FlowFilterConfig config = FilterUtil.findFilterConfigByClass(route.getFilterConfigs(), FLOW_FILTER_NAME, RouteDefinition.FlowFilterConfig.class);
+        if (config == null || !config.isEnabled()) { // 没有开启流控, 不加入过滤器链
+            return null;
+        }
+        return new FlowFilter(config, route);
+    }
+
+    @Override
+    public FilterResult doPreFilter(GatewayContext context) {
+        if (keyedRateLimiter != null) { // 先按键限流, 单个客户端不会耗尽整个路由的配额
+            keyedRateLimiter.tryConsume(context);
         }
+        return rateLimiter.tryConsume(context);
     }
 
     @Override
-    public void doPostFilter(GatewayContext context) {
-        context.doFilter();
+    public FilterResult doPostFilter(GatewayContext context) {
+        return FilterResult.CONTINUE;
     }
 
     @Override
@@ -65,21 +81,112 @@ public class FlowFilter implements Filter {
     }
 
     @SuppressWarnings("DuplicateBranchesInSwitch")
-    private RateLimiter initRateLimiter(RouteDefinition.FlowFilterConfig flowFilterConfig, EventLoop eventLoop) {
+    private static RateLimiter initRateLimiter(RouteDefinition.FlowFilterConfig flowFilterConfig, RouteDefinition route) {
+        String routeId = route.getId();
+        if (flowFilterConfig.isCluster()) {
+            return new ClusterRateLimiter(QuotaCoordinatorManager.getCoordinator(flowFilterConfig.getQuotaCoordinator()), clusterKey(route),
+                    flowFilterConfig.getCapacity(), flowFilterConfig.getClusterWindow(), flowFilterConfig.getLeaseSize(),
+                    QuotaCoordinatorManager::getFleetSize, routeId);
+        }
         switch (flowFilterConfig.getType()) {
             case TOKEN_BUCKET -> {
-                return new TokenBucketRateLimiter(flowFilterConfig.getCapacity(), flowFilterConfig.getRate());
+                return newTokenBucketRateLimiter(flowFilterConfig);
             }
             case SLIDING_WINDOW -> {
                 return new SlidingWindowRateLimiter(flowFilterConfig.getCapacity(), flowFilterConfig.getRate());
             }
             case LEAKY_BUCKET -> {
-                return new LeakyBucketRateLimiter(flowFilterConfig.getCapacity(), flowFilterConfig.getRate(), eventLoop);
+                long leakIntervalNanos = flowFilterConfig.getLeakRatePerSecond() > 0
+                        ? TimeUnit.SECONDS.toNanos(1) / flowFilterConfig.getLeakRatePerSecond()
+                        : TimeUnit.MILLISECONDS.toNanos(flowFilterConfig.getRate());
+                return new LeakyBucketRateLimiter(flowFilterConfig.getCapacity(), leakIntervalNanos,
+                        TimeUnit.MILLISECONDS.toNanos(flowFilterConfig.getMaxQueueWait()), routeId);
             }
             default -> {
-                return new TokenBucketRateLimiter(flowFilterConfig.getCapacity(), flowFilterConfig.getRate());
+                return newTokenBucketRateLimiter(flowFilterConfig);
             }
         }
     }
 
+    /**
+     * 集群限流配额的键, 所有节点上必须相同。没有配置id的路由在每个进程中得到不同的随机id, 因此使用服务名和路径,
+     * 服务名和路径都相同的路由共享同一份集群配额
+     */
+    private static String clusterKey(RouteDefinition route) {
+        return route.getServiceName() + ":" + route.getUri();
+    }
+
+    /**
+     * 按配置取请求的键, 取不到时返回 null; 没有配置键的来源或 keyName 不合法时返回 null, 不按键限流
+     */
+    private static Function<GatewayContext, String> keyResolver(RouteDefinition.FlowFilterConfig flowFilterConfig, String routeId) {
+        if (flowFilterConfig.getKeyType() == null) {
+            return null;
+        }
+        String keyName = flowFilterConfig.getKeyName();
+        switch (flowFilterConfig.getKeyType()) {
+            case HEADER -> {
+                if (StringUtils.isBlank(keyName)) {
+                    log.warn("route {} flow keyType HEADER requires keyName, keyed limiting disabled", routeId);
+                    return null;
+                }
+                return context -> context.getRequest().getHeaders().get(keyName);
+            }
+            case COOKIE -> {
+                if (StringUtils.isBlank(keyName)) {
+                    log.warn("route {} flow keyType COOKIE requires keyName, keyed limiting disabled", routeId);
+                    return null;
+                }
+                return context -> {
+                    Cookie cookie = context.getRequest().getCookie(keyName);
+                    return cookie == null ? null : cookie.value();
+                };
+            }
+            case PATH_SEGMENT -> {
+                int index = segmentIndex(keyName);
+                if (index < 0) {
+                    log.warn("route {} flow keyType PATH_SEGMENT requires a non-negative segment index as keyName, got {}, keyed limiting disabled",
+                            routeId, keyName);
+                    return null;
+                }
+                return context -> pathSegment(context.getRequest().getPath(), index);
+            }
+            default -> {
+                return context -> context.getRequest().getClientIp();
+            }
+        }
+    }
+
+    /**
+     * 解析路径段的下标, 为空或不是非负整数时返回 -1
+     */
+    private static int segmentIndex(String keyName) {
+        try {
+            return keyName == null ? -1 : Math.max(Integer.parseInt(keyName.trim()), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 路径中下标为 index 的段 (从 0 开始, 不含开头的 /), 没有该段时返回 null
+     */
+    private static String pathSegment(String path, int index) {
+        int start = path.startsWith("/") ? 1 : 0;
+        for (int i = 0; i < index; i++) {
+            start = path.indexOf('/', start) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        int end = path.indexOf('/', start);
+        String segment = path.substring(start, end < 0 ? path.length() : end);
+        return segment.isEmpty() ? null : segment;
+    }
+
+    private static RateLimiter newTokenBucketRateLimiter(RouteDefinition.FlowFilterConfig flowFilterConfig) {
+        int initialBurst = flowFilterConfig.getInitialBurst() < 0 ? flowFilterConfig.getCapacity() : flowFilterConfig.getInitialBurst();
+        return new TokenBucketRateLimiter(flowFilterConfig.getCapacity(), flowFilterConfig.getRate(), initialBurst);
+    }
+
 }
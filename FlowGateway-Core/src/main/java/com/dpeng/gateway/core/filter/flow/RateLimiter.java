@@ -2,9 +2,13 @@ package com.dpeng.gateway.core.filter.flow;
 
 
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
 
 public interface RateLimiter {
 
-    void tryConsume(GatewayContext context);
+    /**
+     * 放行时返回 CONTINUE, 请求排队时返回 SUSPEND 并在放行时调用 context.resume(), 拒绝时抛出 LimitedException
+     */
+    FilterResult tryConsume(GatewayContext context);
 
 }
@@ -0,0 +1,39 @@
+package com.dpeng.gateway.core.filter.flow.cluster;
+
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.dpeng.gateway.common.constant.FlowConstant.LOCAL_QUOTA_COORDINATOR;
+
+/**
+ * 进程内的配额协调器, 按固定窗口分配配额, 只在同一进程的限流器之间共享。
+ * 用于单节点部署和测试, 多节点部署时替换为基于共享存储的实现
+ */
+@GatewayPlugin(value = QuotaCoordinator.class, name = LOCAL_QUOTA_COORDINATOR)
+public class LocalQuotaCoordinator implements QuotaCoordinator {
+
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Integer> acquire(String key, int permits, int limit, long windowMillis) {
+        long window = System.currentTimeMillis() / Math.max(1, windowMillis);
+        Quota quota = quotas.compute(key, (k, old) -> {
+            Quota next = old == null || old.window != window ? new Quota(window, 0, 0) : old;
+            int granted = Math.max(0, Math.min(permits, limit - next.used));
+            return new Quota(window, next.used + granted, granted);
+        });
+        return CompletableFuture.completedFuture(quota.granted);
+    }
+
+    @Override
+    public String mark() {
+        return LOCAL_QUOTA_COORDINATOR;
+    }
+
+    private record Quota(long window, int used, int granted) {
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.dpeng.gateway.core.filter.flow.cluster;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 集群限流的配额协调器, 所有网关节点共享同一份配额, 节点按批租用令牌
+ */
+public interface QuotaCoordinator {
+
+    /**
+     * 为 key 租用最多 permits 个令牌, 所有节点在 windowMillis 窗口内合计最多租到 limit 个。
+     * 窗口是按 System.currentTimeMillis() / windowMillis 对齐的固定窗口, 节点在窗口结束时作废这个窗口租到的剩余令牌。
+     * 返回实际租到的令牌数, 0 表示本窗口配额已用完; 协调器不可达时异常完成
+     */
+    CompletableFuture<Integer> acquire(String key, int permits, int limit, long windowMillis);
+
+    String mark();
+
+}
@@ -0,0 +1,41 @@
+package com.dpeng.gateway.core.filter.flow.cluster;
+
+import com.dpeng.gateway.common.plugin.PluginLoader;
+import com.dpeng.gateway.core.plugin.CorePluginRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+
+import static com.dpeng.gateway.common.constant.FlowConstant.LOCAL_QUOTA_COORDINATOR;
+
+/**
+ * 加载配额协调器, 并维护网关集群的节点数 (来自注册中心中网关自身的实例), 协调器不可达时限流器按节点数平分配额
+ */
+@Slf4j
+public class QuotaCoordinatorManager {
+
+    private static final Map<String, QuotaCoordinator> coordinatorMap =
+            PluginLoader.load(QuotaCoordinator.class, CorePluginRegistry.INSTANCE, QuotaCoordinator::mark);
+
+    private static volatile int fleetSize = 1;
+
+    public static QuotaCoordinator getCoordinator(String name) {
+        QuotaCoordinator coordinator = coordinatorMap.get(name);
+        if (coordinator == null) // 同一个进程内的限流器要共享同一个协调器实例
+            coordinator = coordinatorMap.get(LOCAL_QUOTA_COORDINATOR);
+        return coordinator;
+    }
+
+    public static int getFleetSize() {
+        return fleetSize;
+    }
+
+    public static void updateFleetSize(int size) {
+        int newSize = Math.max(1, size); // 注册中心还没有本节点时至少按 1 个节点计算
+        if (newSize != fleetSize) {
+            log.info("gateway fleet size changed: {} -> {}", fleetSize, newSize);
+            fleetSize = newSize;
+        }
+    }
+
+}
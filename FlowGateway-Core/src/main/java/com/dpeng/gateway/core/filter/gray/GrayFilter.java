@@ -1,12 +1,13 @@
 package com.dpeng.gateway.core.filter.gray;
 
-import cn.hutool.json.JSONUtil;
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.config.util.FilterUtil;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.Filter;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.filter.gray.strategy.GrayStrategy;
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,19 +19,39 @@ import static com.dpeng.gateway.common.constant.FilterConstant.GRAY_FILTER_ORDER
 /**
  * 灰度过滤器, 过滤请求是否走灰度版本
  */
+@GatewayPlugin(value = Filter.class, name = GRAY_FILTER_NAME)
 @Slf4j
 public class GrayFilter implements Filter {
 
+    // 编译时解析好的灰度配置和选定的灰度策略, SPI 加载的原型实例为 null
+    private final RouteDefinition.GrayFilterConfig grayFilterConfig;
+
+    private final GrayStrategy strategy;
+
+    public GrayFilter() {
+        this(null, null);
+    }
+
+    private GrayFilter(RouteDefinition.GrayFilterConfig grayFilterConfig, GrayStrategy strategy) {
+        this.grayFilterConfig = grayFilterConfig;
+        this.strategy = strategy;
+    }
+
     @Override
-    public void doPreFilter(GatewayContext context) {
-        RouteDefinition.FilterConfig filterConfig = FilterUtil.findFilterConfigByName(context.getRoute().getFilterConfigs(), GRAY_FILTER_NAME);
+    public Filter compile(RouteDefinition route) {
+        RouteDefinition.FilterConfig filterConfig = FilterUtil.findFilterConfigByName(route.getFilterConfigs(), GRAY_FILTER_NAME);
         if (filterConfig == null) {
             filterConfig = FilterUtil.buildDefaultGrayFilterConfig();
         }
-        if (!filterConfig.isEnable()) {
-            return;
+        if (!filterConfig.isEnable()) { // 关闭灰度, 不加入过滤器链
+            return null;
         }
+        RouteDefinition.GrayFilterConfig config = FilterUtil.parseConfig(filterConfig, RouteDefinition.GrayFilterConfig.class);
+        return new GrayFilter(config, GrayStrategyManager.getStrategy(config.getStrategyName()));
+    }
 
+    @Override
+    public FilterResult doPreFilter(GatewayContext context) {
         // 获取服务所有实例
         List<ServiceInstance> instances = DynamicConfigManager.getInstance()
                 .getInstancesByServiceName(context.getRequest().getServiceDefinition().getServiceName())
@@ -38,18 +59,17 @@ public class GrayFilter implements Filter {
 
         if (instances.stream().anyMatch(instance -> instance.isEnabled() && instance.isGray())) {
             // 存在灰度实例
-            GrayStrategy strategy = selectGrayStrategy(JSONUtil.toBean(filterConfig.getConfig(), RouteDefinition.GrayFilterConfig.class));
-            context.getRequest().setGray(strategy.shouldRoute2Gray(context, instances));
+            context.getRequest().setGray(strategy.shouldRoute2Gray(context, instances, grayFilterConfig));
         } else {
             // 灰度实例都没，不走灰度
             context.getRequest().setGray(false);
         }
-        context.doFilter();
+        return FilterResult.CONTINUE;
     }
 
     @Override
-    public void doPostFilter(GatewayContext context) {
-        context.doFilter();
+    public FilterResult doPostFilter(GatewayContext context) {
+        return FilterResult.CONTINUE;
     }
 
     @Override
@@ -62,8 +82,4 @@ public class GrayFilter implements Filter {
         return GRAY_FILTER_ORDER;
     }
 
-    private GrayStrategy selectGrayStrategy(RouteDefinition.GrayFilterConfig grayFilterConfig) {
-        return GrayStrategyManager.getStrategy(grayFilterConfig.getStrategyName());
-    }
-
 }
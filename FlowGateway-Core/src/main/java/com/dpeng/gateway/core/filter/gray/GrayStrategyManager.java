@@ -1,25 +1,16 @@
 package com.dpeng.gateway.core.filter.gray;
 
+import com.dpeng.gateway.common.plugin.PluginLoader;
 import com.dpeng.gateway.core.filter.gray.strategy.GrayStrategy;
 import com.dpeng.gateway.core.filter.gray.strategy.ThresholdGrayStrategy;
-import lombok.extern.slf4j.Slf4j;
+import com.dpeng.gateway.core.plugin.CorePluginRegistry;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.ServiceLoader;
 
-@Slf4j
 public class GrayStrategyManager {
 
-    private static final Map<String, GrayStrategy> strategyMap = new HashMap<>();
-
-    static {
-        ServiceLoader<GrayStrategy> serviceLoader = ServiceLoader.load(GrayStrategy.class);
-        for (GrayStrategy strategy : serviceLoader) {
-            strategyMap.put(strategy.mark(), strategy);
-            log.info("load gray strategy success: {}", strategy);
-        }
-    }
+    private static final Map<String, GrayStrategy> strategyMap =
+            PluginLoader.load(GrayStrategy.class, CorePluginRegistry.INSTANCE, GrayStrategy::mark);
 
     public static GrayStrategy getStrategy(String name) {
         GrayStrategy strategy = strategyMap.get(name);
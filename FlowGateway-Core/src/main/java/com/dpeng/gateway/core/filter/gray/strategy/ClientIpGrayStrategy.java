@@ -1,27 +1,28 @@
 package com.dpeng.gateway.core.filter.gray.strategy;
 
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
-import com.dpeng.gateway.config.util.FilterUtil;
 import com.dpeng.gateway.core.context.GatewayContext;
 
 import java.util.List;
 
-import static com.dpeng.gateway.common.constant.FilterConstant.GRAY_FILTER_NAME;
+import static com.dpeng.gateway.common.constant.GrayConstant.MAX_GRAY_THRESHOLD;
 import static com.dpeng.gateway.common.constant.GrayConstant.CLIENT_IP_GRAY_STRATEGY;
 
 /**
  * 根据用户ip决定是否灰度
  */
+@GatewayPlugin(value = GrayStrategy.class, name = CLIENT_IP_GRAY_STRATEGY)
 public class ClientIpGrayStrategy implements GrayStrategy {
 
     @Override
-    public boolean shouldRoute2Gray(GatewayContext context, List<ServiceInstance> instances) {
+    public boolean shouldRoute2Gray(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.GrayFilterConfig config) {
         if (instances.stream().anyMatch(instance -> instance.isEnabled() && !instance.isGray())) {
-            RouteDefinition.GrayFilterConfig grayFilterConfig = FilterUtil.findFilterConfigByClass(context.getRoute().getFilterConfigs(), GRAY_FILTER_NAME, RouteDefinition.GrayFilterConfig.class);
+            double maxGrayThreshold = config == null ? MAX_GRAY_THRESHOLD : config.getMaxGrayThreshold();
             double grayThreshold = instances.stream().mapToDouble(ServiceInstance::getThreshold).sum();
-            grayThreshold = Math.min(grayThreshold, grayFilterConfig.getMaxGrayThreshold());
+            grayThreshold = Math.min(grayThreshold, maxGrayThreshold);
             return Math.abs(context.getRequest().getHost().hashCode()) % 100 <= grayThreshold * 100;
         }
         return true;
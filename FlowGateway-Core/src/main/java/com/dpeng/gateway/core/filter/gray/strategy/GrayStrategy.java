@@ -1,6 +1,7 @@
 package com.dpeng.gateway.core.filter.gray.strategy;
 
 
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 
@@ -8,7 +9,7 @@ import java.util.List;
 
 public interface GrayStrategy {
 
-    boolean shouldRoute2Gray(GatewayContext context, List<ServiceInstance> instances);
+    boolean shouldRoute2Gray(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.GrayFilterConfig config);
 
     String mark();
 
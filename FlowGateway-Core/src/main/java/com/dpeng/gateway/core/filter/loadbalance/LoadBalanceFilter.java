@@ -1,14 +1,15 @@
 package com.dpeng.gateway.core.filter.loadbalance;
 
-import cn.hutool.json.JSONUtil;
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.NotFoundException;
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.config.util.FilterUtil;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.Filter;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.filter.loadbalance.strategy.GrayLoadBalanceStrategy;
 import com.dpeng.gateway.core.filter.loadbalance.strategy.LoadBalanceStrategy;
 import lombok.extern.slf4j.Slf4j;
@@ -18,44 +19,65 @@ import java.util.List;
 import static com.dpeng.gateway.common.constant.FilterConstant.LOAD_BALANCE_FILTER_NAME;
 import static com.dpeng.gateway.common.constant.FilterConstant.LOAD_BALANCE_FILTER_ORDER;
 
+@GatewayPlugin(value = Filter.class, name = LOAD_BALANCE_FILTER_NAME)
 @Slf4j
 public class LoadBalanceFilter implements Filter {
 
+    private static final LoadBalanceStrategy GRAY_STRATEGY = new GrayLoadBalanceStrategy(); // 灰度负载均衡策略
+
+    // 编译时解析好的负载均衡配置和选定的负载均衡策略, SPI 加载的原型实例为 null
+    private final RouteDefinition.LoadBalanceFilterConfig loadBalanceFilterConfig;
+
+    private final LoadBalanceStrategy strategy;
+
+    public LoadBalanceFilter() {
+        this(null, null);
+    }
+
+    private LoadBalanceFilter(RouteDefinition.LoadBalanceFilterConfig loadBalanceFilterConfig, LoadBalanceStrategy strategy) {
+        this.loadBalanceFilterConfig = loadBalanceFilterConfig;
+        this.strategy = strategy;
+    }
+
     @Override
-    public void doPreFilter(GatewayContext context) {
-        RouteDefinition.FilterConfig filterConfig = FilterUtil.findFilterConfigByName(context.getRoute().getFilterConfigs(), LOAD_BALANCE_FILTER_NAME);
+    public Filter compile(RouteDefinition route) {
+        RouteDefinition.FilterConfig filterConfig = FilterUtil.findFilterConfigByName(route.getFilterConfigs(), LOAD_BALANCE_FILTER_NAME);
         if (filterConfig == null) {
             filterConfig = FilterUtil.buildDefaultLoadBalanceFilterConfig();
         }
+        RouteDefinition.LoadBalanceFilterConfig config = FilterUtil.parseConfig(filterConfig, RouteDefinition.LoadBalanceFilterConfig.class);
+        return new LoadBalanceFilter(config, LoadBalanceStrategyManager.getStrategy(config.getStrategyName()));
+    }
+
+    @Override
+    public FilterResult doPreFilter(GatewayContext context) {
         // 获取服务所有实例
         List<ServiceInstance> instances = DynamicConfigManager.getInstance()
                 .getInstancesByServiceName(context.getRequest().getServiceDefinition().getServiceName())
                 .values().stream().toList();
 
-        LoadBalanceStrategy strategy;
-        //如果请求是灰度,则筛选出所有灰度实例,选择灰度负载均衡策略, 确保灰度流量只进入灰度实例; 如果是普通请求,则从负载均衡配置中读取策略
+        LoadBalanceStrategy strategy = this.strategy;
+        //如果请求是灰度,则筛选出所有灰度实例,选择灰度负载均衡策略, 确保灰度流量只进入灰度实例; 如果是普通请求,则使用负载均衡配置中的策略
         if (context.getRequest().isGray()) {
-            strategy = new GrayLoadBalanceStrategy(); // 灰度负载均衡策略
+            strategy = GRAY_STRATEGY;
             // 如果请求是灰度的，再进行一遍过滤
             instances = instances.stream().filter(instance -> instance.isEnabled() && instance.isGray()).toList();
-        } else {
-            strategy = selectLoadBalanceStrategy(JSONUtil.toBean(filterConfig.getConfig(), RouteDefinition.LoadBalanceFilterConfig.class));
         }
         if (instances.isEmpty()) {
             throw new NotFoundException(ResponseCode.SERVICE_INSTANCE_NOT_FOUND);
         }
-        ServiceInstance serviceInstance = strategy.selectInstance(context, instances);
+        ServiceInstance serviceInstance = strategy.selectInstance(context, instances, loadBalanceFilterConfig);
         if (null == serviceInstance) {
             throw new NotFoundException(ResponseCode.SERVICE_INSTANCE_NOT_FOUND);
         }
         // 设置负载均衡后下游的目标服务器host
         context.getRequest().setModifyHost(serviceInstance.getIp() + ":" + serviceInstance.getPort());
-        context.doFilter();
+        return FilterResult.CONTINUE;
     }
 
     @Override
-    public void doPostFilter(GatewayContext context) {
-        context.doFilter();
+    public FilterResult doPostFilter(GatewayContext context) {
+        return FilterResult.CONTINUE;
     }
 
     @Override
@@ -68,8 +90,4 @@ public class LoadBalanceFilter implements Filter {
         return LOAD_BALANCE_FILTER_ORDER;
     }
 
-    private LoadBalanceStrategy selectLoadBalanceStrategy(RouteDefinition.LoadBalanceFilterConfig loadBalanceFilterConfig) {
-        return LoadBalanceStrategyManager.getStrategy(loadBalanceFilterConfig.getStrategyName());
-    }
-
 }
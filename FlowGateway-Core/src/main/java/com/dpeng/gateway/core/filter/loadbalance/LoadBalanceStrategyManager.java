@@ -1,25 +1,16 @@
 package com.dpeng.gateway.core.filter.loadbalance;
 
+import com.dpeng.gateway.common.plugin.PluginLoader;
 import com.dpeng.gateway.core.filter.loadbalance.strategy.LoadBalanceStrategy;
 import com.dpeng.gateway.core.filter.loadbalance.strategy.RoundRobinLoadBalanceStrategy;
-import lombok.extern.slf4j.Slf4j;
+import com.dpeng.gateway.core.plugin.CorePluginRegistry;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.ServiceLoader;
 
-@Slf4j
 public class LoadBalanceStrategyManager {
 
-    private static final Map<String, LoadBalanceStrategy> strategyMap = new HashMap<>();
-
-    static {
-        ServiceLoader<LoadBalanceStrategy> serviceLoader = ServiceLoader.load(LoadBalanceStrategy.class);
-        for (LoadBalanceStrategy strategy : serviceLoader) {
-            strategyMap.put(strategy.mark(), strategy);
-            log.info("load loadbalance strategy success: {}", strategy);
-        }
-    }
+    private static final Map<String, LoadBalanceStrategy> strategyMap =
+            PluginLoader.load(LoadBalanceStrategy.class, CorePluginRegistry.INSTANCE, LoadBalanceStrategy::mark);
 
     public static LoadBalanceStrategy getStrategy(String name) {
         LoadBalanceStrategy strategy = strategyMap.get(name);
@@ -1,28 +1,27 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
-import com.dpeng.gateway.config.util.FilterUtil;
 import com.dpeng.gateway.core.algorithm.ConsistentHashing;
 import com.dpeng.gateway.core.context.GatewayContext;
 
 import java.util.List;
 
-import static com.dpeng.gateway.common.constant.FilterConstant.LOAD_BALANCE_FILTER_NAME;
 import static com.dpeng.gateway.common.constant.LoadBalanceConstant.CLIENT_IP_CONSISTENT_HASH_LOAD_BALANCE_STRATEGY;
 
 /**
  * 基于客户端 IP 的一致性哈希负载均衡策略
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = CLIENT_IP_CONSISTENT_HASH_LOAD_BALANCE_STRATEGY)
 public class ClientIpConsistentHashLoadBalanceStrategy implements LoadBalanceStrategy {
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
-        //从路由配置中读取负载均衡参数。
-        RouteDefinition.LoadBalanceFilterConfig loadBalanceFilterConfig = FilterUtil.findFilterConfigByClass(context.getRoute().getFilterConfigs(), LOAD_BALANCE_FILTER_NAME, RouteDefinition.LoadBalanceFilterConfig.class);
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
+        //使用路由配置中的负载均衡参数。
         int virtualNodeNum = 1;
-        if (loadBalanceFilterConfig != null && loadBalanceFilterConfig.getVirtualNodeNum() > 0) {
-            virtualNodeNum = loadBalanceFilterConfig.getVirtualNodeNum();
+        if (config != null && config.getVirtualNodeNum() > 0) {
+            virtualNodeNum = config.getVirtualNodeNum();
         }
 
         //将所有实例 ID 组成 nodes 列表，用于创建一致性哈希环。
@@ -1,5 +1,7 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 
@@ -10,10 +12,11 @@ import static com.dpeng.gateway.common.constant.LoadBalanceConstant.CLIENT_IP_LO
 /**
  * 基于客户端 IP 的普通哈希负载均衡策略
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = CLIENT_IP_LOAD_BALANCE_STRATEGY)
 public class ClientIpLoadBalanceStrategy implements LoadBalanceStrategy{
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
         return instances.get(Math.abs(context.getRequest().getHost().hashCode()) % instances.size());
     }
 
@@ -1,5 +1,7 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 import java.util.List;
@@ -8,10 +10,11 @@ import static com.dpeng.gateway.common.constant.LoadBalanceConstant.GRAY_LOAD_BA
 /**
  * 默认的灰度过滤器, 灰度加权负载均衡策略
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = GRAY_LOAD_BALANCE_STRATEGY)
 public class GrayLoadBalanceStrategy implements LoadBalanceStrategy {
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
         int totalThreshold = (int) (instances.stream().mapToDouble(ServiceInstance::getThreshold).sum() * 100);
         if (totalThreshold <= 0) return null;
         int randomThreshold = Math.abs(context.getRequest().getHost().hashCode()) % totalThreshold;
@@ -1,5 +1,6 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 
@@ -7,7 +8,7 @@ import java.util.List;
 
 public interface LoadBalanceStrategy {
 
-    ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances);
+    ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config);
 
     String mark();
 
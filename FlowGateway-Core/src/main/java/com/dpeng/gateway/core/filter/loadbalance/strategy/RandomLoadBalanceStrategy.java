@@ -1,6 +1,8 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 
@@ -12,10 +14,11 @@ import static com.dpeng.gateway.common.constant.LoadBalanceConstant.RANDOM_LOAD_
 /**
  * 负载均衡策略: 随机
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = RANDOM_LOAD_BALANCE_STRATEGY)
 public class RandomLoadBalanceStrategy implements LoadBalanceStrategy {
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
         return instances.get(ThreadLocalRandom.current().nextInt(instances.size()));
     }
 
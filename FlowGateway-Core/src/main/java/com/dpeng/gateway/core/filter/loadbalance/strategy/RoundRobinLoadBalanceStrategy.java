@@ -1,8 +1,8 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
-import com.dpeng.gateway.config.util.FilterUtil;
 import com.dpeng.gateway.core.context.GatewayContext;
 
 import java.util.List;
@@ -10,12 +10,12 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.dpeng.gateway.common.constant.FilterConstant.LOAD_BALANCE_FILTER_NAME;
 import static com.dpeng.gateway.common.constant.LoadBalanceConstant.ROUND_ROBIN_LOAD_BALANCE_STRATEGY;
 
 /**
  * 轮询负载均衡策略, 支持 严格轮询 和 非严格轮询 模式, 前者多线程下是严格的顺序轮询, 后者每个线程有自己的轮询顺序
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = ROUND_ROBIN_LOAD_BALANCE_STRATEGY)
 public class RoundRobinLoadBalanceStrategy implements LoadBalanceStrategy {
 
     // 存储每个服务名称对应的严格轮询位置（使用AtomicInteger保证线程安全）
@@ -28,15 +28,9 @@ public class RoundRobinLoadBalanceStrategy implements LoadBalanceStrategy {
     private final int THRESHOLD = Integer.MAX_VALUE >> 2; // 预防移除的安全阈值
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
-        // 默认使用严格轮询
-        boolean isStrictRoundRobin = true;
-
-        // 获取负载均衡配置，判断是否启用严格轮询
-        RouteDefinition.LoadBalanceFilterConfig loadBalanceFilterConfig = FilterUtil.findFilterConfigByClass(context.getRoute().getFilterConfigs(), LOAD_BALANCE_FILTER_NAME, RouteDefinition.LoadBalanceFilterConfig.class);
-        if (loadBalanceFilterConfig != null) {
-            isStrictRoundRobin = loadBalanceFilterConfig.isStrictRoundRobin();
-        }
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
+        // 默认使用严格轮询, 负载均衡配置中可以关闭
+        boolean isStrictRoundRobin = config == null || config.isStrictRoundRobin();
 
         // 获取当前请求的服务名
         String serviceName = context.getRequest().getServiceDefinition().getServiceName();
@@ -1,5 +1,7 @@
 package com.dpeng.gateway.core.filter.loadbalance.strategy;
 
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.config.pojo.ServiceInstance;
 import com.dpeng.gateway.core.context.GatewayContext;
 
@@ -11,10 +13,11 @@ import static com.dpeng.gateway.common.constant.LoadBalanceConstant.WEIGHT_LOAD_
 /**
  * 加权随机负载均衡
  */
+@GatewayPlugin(value = LoadBalanceStrategy.class, name = WEIGHT_LOAD_BALANCE_STRATEGY)
 public class WeightLoadBalanceStrategy implements LoadBalanceStrategy {
 
     @Override
-    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances) {
+    public ServiceInstance selectInstance(GatewayContext context, List<ServiceInstance> instances, RouteDefinition.LoadBalanceFilterConfig config) {
         // 计算所有服务实例的权重总和
         int totalWeight = instances.stream().mapToInt(ServiceInstance::getWeight).sum();
 
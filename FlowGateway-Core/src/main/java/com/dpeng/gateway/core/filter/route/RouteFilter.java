@@ -1,11 +1,11 @@
 package com.dpeng.gateway.core.filter.route;
 
 import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.Filter;
-import com.dpeng.gateway.core.helper.ContextHelper;
-import com.dpeng.gateway.core.helper.ResponseHelper;
+import com.dpeng.gateway.core.filter.FilterResult;
 import com.dpeng.gateway.core.resilience.Resilience;
 import org.asynchttpclient.Response;
 
@@ -14,26 +14,27 @@ import java.util.concurrent.CompletableFuture;
 import static com.dpeng.gateway.common.constant.FilterConstant.ROUTE_FILTER_NAME;
 import static com.dpeng.gateway.common.constant.FilterConstant.ROUTE_FILTER_ORDER;
 
+@GatewayPlugin(value = Filter.class, name = ROUTE_FILTER_NAME)
 public class RouteFilter implements Filter {
 
     @Override
-    public void doPreFilter(GatewayContext context) {
+    public FilterResult doPreFilter(GatewayContext context) {
         RouteDefinition.ResilienceConfig resilience = context.getRoute().getResilience();
         if (resilience.isEnabled()) { // 开启弹性配置
             Resilience.getInstance().executeRequest(context);
         } else {
             CompletableFuture<Response> future = RouteUtil.buildRouteSupplier(context).get().toCompletableFuture();
             future.exceptionally(throwable -> {
-                context.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.HTTP_RESPONSE_ERROR));
-                ContextHelper.writeBackResponse(context);
+                context.fail(throwable, ResponseCode.HTTP_RESPONSE_ERROR); // 切回事件循环写回错误响应
                 return null;
             });
         }
+        return FilterResult.SUSPEND; // 收到下游响应后继续执行后置过滤器
     }
 
     @Override
-    public void doPostFilter(GatewayContext context) {
-        context.doFilter();
+    public FilterResult doPostFilter(GatewayContext context) {
+        return FilterResult.CONTINUE;
     }
 
     @Override
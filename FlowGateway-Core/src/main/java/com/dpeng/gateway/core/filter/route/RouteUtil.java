@@ -1,12 +1,18 @@
 package com.dpeng.gateway.core.filter.route;
 
 import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.helper.MetricsHelper;
 import com.dpeng.gateway.core.helper.ResponseHelper;
 import com.dpeng.gateway.core.http.HttpClient;
+import com.dpeng.gateway.core.request.GatewayRequest;
+import com.dpeng.gateway.core.response.StreamingResponseHandler;
+import com.dpeng.gateway.core.response.TimedResponseHandler;
+import org.asynchttpclient.AsyncHandler;
 import org.asynchttpclient.Request;
 import org.asynchttpclient.Response;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Supplier;
 
@@ -14,22 +20,74 @@ public class RouteUtil {
 
     //Supplier 懒加载（调用 get() 才会执行），便于在 Resilience 机制（重试、熔断等）中使用。
     public static Supplier<CompletionStage<Response>> buildRouteSupplier(GatewayContext context) {
+        if (context.getRoute().getStreaming().isResponseEnabled()) {
+            return buildStreamingRouteSupplier(context);
+        }
         return () -> {
-            //从 GatewayContext 中获取 HTTP 请求对象，并调用 .build() 构造完整请求。
-            Request request = context.getRequest().build();
-
             //通过 单例 HttpClient 发送 HTTP 请求，返回 CompletableFuture<Response>（异步执行）。
-            CompletableFuture<Response> future = HttpClient.getInstance().executeRequest(request);
+            CompletableFuture<Response> future = execute(context, new TimedResponseHandler(context));
             future.whenComplete(((response, throwable) -> {
-                if (throwable != null) {
-                    context.setThrowable(throwable);
-                    throw new RuntimeException(throwable);
+                if (throwable != null) { // 失败由调用方通过 context.fail 在事件循环中处理
+                    return;
                 }
                 context.setResponse(ResponseHelper.buildGatewayResponse(response));
-                context.doFilter();
+                context.resume(); // 切回事件循环执行后置过滤器
             }));
             return future;
         };
     }
 
+    /**
+     * 流式响应: 后置过滤器在收到响应头时由 StreamingResponseHandler 触发, 响应体边收边写回客户端
+     */
+    private static Supplier<CompletionStage<Response>> buildStreamingRouteSupplier(GatewayContext context) {
+        return () -> {
+            StreamingResponseHandler handler = new StreamingResponseHandler(context);
+            CompletableFuture<Response> future = execute(context, handler);
+            return future.handle((response, throwable) -> {
+                if (throwable == null) {
+                    return response;
+                }
+                if (handler.isHeadersReceived()) {
+                    // 响应头已写回, 处理器已关闭客户端连接, 不能再重试或降级
+                    return null;
+                }
+                throw new CompletionException(throwable);
+            });
+        };
+    }
+
+    /**
+     * 构建并发起一次下游请求, 下游请求持有请求体的引用, 结束 (成功或失败) 后才释放, 网关提前写回响应时不会释放正在写出的请求体
+     */
+    private static <T> CompletableFuture<T> execute(GatewayContext context, AsyncHandler<T> handler) {
+        //从 GatewayContext 中获取 HTTP 请求对象，并调用 .build() 构造完整请求。
+        GatewayRequest gatewayRequest = context.getRequest();
+        Request request = gatewayRequest.build();
+        markUpstreamStart(context);
+
+        gatewayRequest.retainUpstreamBody();
+        CompletableFuture<T> future;
+        try {
+            future = HttpClient.getInstance().executeRequest(request, handler,
+                    context.getNettyCtx().channel().eventLoop(), context.getRoute().getUpstreamProtocol());
+        } catch (Throwable t) {
+            gatewayRequest.releaseUpstreamBody();
+            throw t;
+        }
+        future.whenComplete((result, throwable) -> gatewayRequest.releaseUpstreamBody());
+        return future;
+    }
+
+    /**
+     * 记录发起下游请求的时间, 第一次发起时统计前置过滤器阶段的耗时, 重试不重复统计
+     */
+    private static void markUpstreamStart(GatewayContext context) {
+        long now = System.nanoTime();
+        if (context.getUpstreamStartNanos() == 0 && context.getFilterStartNanos() > 0) {
+            MetricsHelper.PRE_FILTERS.record(now - context.getFilterStartNanos());
+        }
+        context.setUpstreamStartNanos(now);
+    }
+
 }
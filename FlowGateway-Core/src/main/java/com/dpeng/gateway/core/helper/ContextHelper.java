@@ -5,17 +5,40 @@ import com.dpeng.gateway.config.helper.RouteResolver;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.request.GatewayRequest;
+import com.dpeng.gateway.core.request.StreamingRequestBody;
+import com.dpeng.gateway.core.response.StreamingResponseHandler;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class ContextHelper {
 
+    /**
+     * 请求头到达时已匹配好的路由, 由 RouteAwareHttpObjectAggregator 设置, 避免聚合完成后重复匹配
+     */
+    public static final AttributeKey<RouteDefinition> MATCHED_ROUTE = AttributeKey.valueOf("matchedRoute");
+
+    /**
+     * 当前正在接收的流式请求体
+     */
+    public static final AttributeKey<StreamingRequestBody> STREAMING_BODY = AttributeKey.valueOf("streamingBody");
+
+    /**
+     * 当前正在写回的流式响应, 客户端可写性变化时用来恢复读取下游
+     */
+    public static final AttributeKey<StreamingResponseHandler> STREAMING_RESPONSE = AttributeKey.valueOf("streamingResponse");
+
     public static GatewayContext buildGatewayContext(FullHttpRequest request, ChannelHandlerContext ctx) {
         //解析请求路径，匹配路由
-        RouteDefinition route = RouteResolver.matchingRouteByUri(request.uri());
+        RouteDefinition route = ctx.channel().attr(MATCHED_ROUTE).getAndSet(null);
+        if (route == null) {
+            long start = System.nanoTime();
+            route = RouteResolver.matchingRoute(request);
+            MetricsHelper.ROUTE_MATCH.record(System.nanoTime() - start);
+        }
 
         GatewayRequest gatewayRequest = RequestHelper.buildGatewayRequest(
                 DynamicConfigManager.getInstance().getServiceByName(route.getServiceName()), request, ctx);
@@ -23,8 +46,36 @@ public class ContextHelper {
         return new GatewayContext(ctx, gatewayRequest, route, HttpUtil.isKeepAlive(request));
     }
 
+    /**
+     * 流式请求在请求头到达时就构建上下文, 请求体由 streamingBody 边收边转发
+     */
+    public static GatewayContext buildGatewayContext(HttpRequest request, StreamingRequestBody streamingBody,
+                                                     RouteDefinition route, ChannelHandlerContext ctx) {
+        GatewayRequest gatewayRequest = RequestHelper.buildGatewayRequest(
+                DynamicConfigManager.getInstance().getServiceByName(route.getServiceName()), request, streamingBody, ctx);
+
+        return new GatewayContext(ctx, gatewayRequest, route, HttpUtil.isKeepAlive(request));
+    }
+
     public static void writeBackResponse(GatewayContext context) {
+        long writeStart = System.nanoTime();
+        doWriteBackResponse(context);
+        MetricsHelper.recordResponse(context, writeStart, System.nanoTime());
+    }
+
+    private static void doWriteBackResponse(GatewayContext context) {
+        StreamingRequestBody streamingBody = context.getRequest().getStreamingBody();
+        if (streamingBody != null && !streamingBody.isCompleted()) {
+            streamingBody.discard(); // 下游已提前响应, 客户端剩余的请求体直接丢弃
+        }
+
+        if (context.getResponse().isStreaming()) { // 流式响应只写回响应头, 响应体由处理器继续转发
+            context.getResponse().getStreamingHandler().writeHead();
+            return;
+        }
+
         FullHttpResponse httpResponse = ResponseHelper.buildHttpResponse(context.getResponse());
+        context.getRequest().releaseBody(); // 释放网关持有的请求体, 仍在进行的下游请求 (超时、降级时) 结束后才真正释放
 
         if (!context.isKeepAlive()) { // 短连接
             context.getNettyCtx().writeAndFlush(httpResponse).addListener(ChannelFutureListener.CLOSE);
@@ -0,0 +1,110 @@
+package com.dpeng.gateway.core.helper;
+
+import com.dpeng.gateway.common.metrics.Counter;
+import com.dpeng.gateway.common.metrics.Histogram;
+import com.dpeng.gateway.common.metrics.MetricRegistry;
+import com.dpeng.gateway.core.context.GatewayContext;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 请求各阶段的耗时统计, 阶段的起止时间是 GatewayContext 上的 nanoTime 时间戳, 写回响应时一次性记录到无锁直方图。
+ * 直方图在类加载或第一次用到时取好, 请求路径上不拼接指标名、不分配对象, 可以常开。
+ * 按路由id区分的指标通过 routeCounter/routeHistogram 创建, 路由删除时由 removeRouteMetrics 一起移除,
+ * 没有配置id的路由每次推送都会得到新的随机id, 不移除会不断累积。
+ */
+public class MetricsHelper {
+
+    // 收到请求头到请求体聚合完成
+    public static final Histogram DECODE = histogram("phase.decode.nanos");
+
+    // 路由匹配
+    public static final Histogram ROUTE_MATCH = histogram("phase.route_match.nanos");
+
+    // 开始执行前置过滤器到发起下游请求
+    public static final Histogram PRE_FILTERS = histogram("phase.pre_filters.nanos");
+
+    // 发起下游请求到取得连接 (新建或从连接池取出)
+    public static final Histogram UPSTREAM_CONNECT = histogram("phase.upstream_connect.nanos");
+
+    // 取得连接到收到下游响应首字节
+    public static final Histogram UPSTREAM_FIRST_BYTE = histogram("phase.upstream_first_byte.nanos");
+
+    // 开始执行后置过滤器到开始写回响应
+    public static final Histogram POST_FILTERS = histogram("phase.post_filters.nanos");
+
+    // 写回响应, 流式响应只包含响应头
+    public static final Histogram WRITE = histogram("phase.write.nanos");
+
+    private static final Map<String /* 路由id */, Histogram> routeLatencies = new ConcurrentHashMap<>();
+
+    private static final Map<String /* 路由id */, Set<String> /* 指标名 */> routeMetricNames = new ConcurrentHashMap<>();
+
+    /**
+     * 路由的端到端耗时, 收到请求头到写回响应
+     */
+    public static Histogram routeLatency(String routeId) {
+        Histogram histogram = routeLatencies.get(routeId);
+        return histogram != null ? histogram : routeLatencies.computeIfAbsent(routeId, id -> routeHistogram("route.latency.nanos.", id));
+    }
+
+    /**
+     * 按路由id区分的计数器, 指标名为 prefix + routeId
+     */
+    public static Counter routeCounter(String prefix, String routeId) {
+        return MetricRegistry.getInstance().counter(routeMetricName(prefix, routeId));
+    }
+
+    /**
+     * 按路由id区分的直方图, 指标名为 prefix + routeId
+     */
+    public static Histogram routeHistogram(String prefix, String routeId) {
+        return histogram(routeMetricName(prefix, routeId));
+    }
+
+    /**
+     * 路由删除后移除它的所有指标
+     */
+    public static void removeRouteMetrics(String routeId) {
+        routeLatencies.remove(routeId);
+        Set<String> names = routeMetricNames.remove(routeId);
+        if (names != null) {
+            names.forEach(MetricRegistry.getInstance()::remove);
+        }
+    }
+
+    private static String routeMetricName(String prefix, String routeId) {
+        String name = prefix + routeId;
+        routeMetricNames.computeIfAbsent(routeId, id -> ConcurrentHashMap.newKeySet()).add(name);
+        return name;
+    }
+
+    /**
+     * 写回响应后记录请求各阶段的耗时, 没有经过的阶段不记录
+     */
+    public static void recordResponse(GatewayContext context, long writeStart, long writeEnd) {
+        WRITE.record(writeEnd - writeStart);
+        if (context.getPostFilterStartNanos() > 0) {
+            POST_FILTERS.record(writeStart - context.getPostFilterStartNanos());
+        }
+        long upstreamStart = context.getUpstreamStartNanos();
+        long connected = context.getUpstreamConnectedNanos();
+        long firstByte = context.getUpstreamFirstByteNanos();
+        if (upstreamStart > 0 && connected >= upstreamStart) {
+            UPSTREAM_CONNECT.record(connected - upstreamStart);
+        }
+        if (firstByte > 0) {
+            UPSTREAM_FIRST_BYTE.record(firstByte - Math.max(upstreamStart, connected));
+        }
+        if (context.getRoute() != null && context.getRequestStartNanos() > 0) {
+            routeLatency(context.getRoute().getId()).record(writeEnd - context.getRequestStartNanos());
+        }
+    }
+
+    private static Histogram histogram(String name) {
+        return MetricRegistry.getInstance().histogram(name);
+    }
+
+}
@@ -3,6 +3,8 @@ package com.dpeng.gateway.core.helper;
 import com.alibaba.nacos.common.utils.StringUtils;
 import com.dpeng.gateway.config.pojo.ServiceDefinition;
 import com.dpeng.gateway.core.request.GatewayRequest;
+import com.dpeng.gateway.core.request.RequestBody;
+import com.dpeng.gateway.core.request.StreamingRequestBody;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import org.asynchttpclient.Request;
@@ -23,17 +25,33 @@ public class RequestHelper {
      * 主要用于 将 Netty 服务端接收到的 HTTP 请求转换为网关内部请求 (GatewayRequest)，并且提供获取客户端 IP 的方法。
      */
     public static GatewayRequest buildGatewayRequest(ServiceDefinition serviceDefinition, FullHttpRequest fullHttpRequest, ChannelHandlerContext ctx) {
-        HttpHeaders headers = fullHttpRequest.headers(); // 服务端的http请求头
+        // 请求体的引用计数交给 RequestBody, 请求处理结束时释放
+        RequestBody requestBody = new RequestBody(fullHttpRequest.content(), ctx.alloc());
+        return buildGatewayRequest(serviceDefinition, fullHttpRequest, requestBody, null, ctx);
+    }
+
+    /**
+     * 流式请求只有请求头, 请求体由 streamingBody 边收边转发
+     */
+    public static GatewayRequest buildGatewayRequest(ServiceDefinition serviceDefinition, HttpRequest httpRequest,
+                                                     StreamingRequestBody streamingBody, ChannelHandlerContext ctx) {
+        return buildGatewayRequest(serviceDefinition, httpRequest, null, streamingBody, ctx);
+    }
+
+    private static GatewayRequest buildGatewayRequest(ServiceDefinition serviceDefinition, HttpRequest httpRequest,
+                                                      RequestBody requestBody, StreamingRequestBody streamingBody,
+                                                      ChannelHandlerContext ctx) {
+        HttpHeaders headers = httpRequest.headers(); // 服务端的http请求头
         String host = headers.get(HttpHeaderNames.HOST); // host
-        HttpMethod method = fullHttpRequest.method(); // http请求类型
-        String uri = fullHttpRequest.uri(); // uri
-        String clientIp = getClientIp(ctx, fullHttpRequest); // 客户端ip
-        String contentType = HttpUtil.getMimeType(fullHttpRequest) == null ? null :
-                HttpUtil.getMimeType(fullHttpRequest).toString(); // 请求的MIME类型
-        Charset charset = HttpUtil.getCharset(fullHttpRequest, StandardCharsets.UTF_8); // 字符集
+        HttpMethod method = httpRequest.method(); // http请求类型
+        String uri = httpRequest.uri(); // uri
+        String clientIp = getClientIp(ctx, httpRequest); // 客户端ip
+        String contentType = HttpUtil.getMimeType(httpRequest) == null ? null :
+                HttpUtil.getMimeType(httpRequest).toString(); // 请求的MIME类型
+        Charset charset = HttpUtil.getCharset(httpRequest, StandardCharsets.UTF_8); // 字符集
 
         return new GatewayRequest(serviceDefinition, charset, clientIp, host, uri, method,
-                contentType, headers, fullHttpRequest);
+                contentType, headers, httpRequest, requestBody, streamingBody);
     }
 
     public static Request buildHttpClientRequest(GatewayRequest gatewayRequest) {
@@ -45,7 +63,7 @@ public class RequestHelper {
      * X-Forwarded-For 是 HTTP 代理服务器（如 Nginx）常用的请求头，表示原始客户端的 IP 地址。
      * xForwardedValue = "192.168.1.100, 172.16.0.1";例如第一个是用户真实ip, 第二个是代理服务器ip
      */
-    private static String getClientIp(ChannelHandlerContext ctx, FullHttpRequest request) {
+    private static String getClientIp(ChannelHandlerContext ctx, HttpRequest request) {
         String xForwardedValue = request.headers().get(HTTP_FORWARD_SEPARATOR);
 
         String clientIp = null;
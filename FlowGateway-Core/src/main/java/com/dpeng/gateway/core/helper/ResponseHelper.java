@@ -4,7 +4,11 @@ import cn.hutool.json.JSONUtil;
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.core.response.GatewayResponse;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.codec.http.*;
 import lombok.extern.slf4j.Slf4j;
 import org.asynchttpclient.Response;
@@ -31,10 +35,10 @@ public class ResponseHelper {
         }
 
         DefaultFullHttpResponse httpResponse;
-        if (Objects.nonNull(gatewayResponse.getResponse())) { // 下游响应不为空，直接拿下游响应构造
+        if (Objects.nonNull(gatewayResponse.getResponse())) { // 下游响应不为空，响应体直接取下游的，状态码和响应头可能被后置过滤器修改过
             httpResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
-                    HttpResponseStatus.valueOf(gatewayResponse.getResponse().getStatusCode()), content);
-            httpResponse.headers().add(gatewayResponse.getResponse().getHeaders()); //
+                    gatewayResponse.getHttpResponseStatus(), content);
+            httpResponse.headers().add(gatewayResponse.getResponseHeaders());
         } else {
             httpResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
                     gatewayResponse.getHttpResponseStatus(), content);
@@ -56,11 +60,64 @@ public class ResponseHelper {
     }
 
 
+    /**
+     * 过滤器读取下游响应体, 压缩透传时按 Content-Encoding 解压, 解压结果缓存在 GatewayResponse 中, 写回客户端的仍是原始响应体
+     */
+    public static byte[] getDecodedResponseBody(GatewayResponse gatewayResponse) {
+        if (gatewayResponse.getDecodedBody() != null) {
+            return gatewayResponse.getDecodedBody();
+        }
+        Response response = gatewayResponse.getResponse();
+        if (response == null) {
+            return gatewayResponse.getContent() == null ? new byte[0] : gatewayResponse.getContent().getBytes();
+        }
+        byte[] body = response.getResponseBodyAsBytes();
+        String contentEncoding = response.getHeaders().get(HttpHeaderNames.CONTENT_ENCODING);
+        ZlibWrapper wrapper = zlibWrapper(contentEncoding);
+        if (wrapper != null && body.length > 0) {
+            body = decode(body, wrapper);
+        }
+        gatewayResponse.setDecodedBody(body);
+        return body;
+    }
+
+    private static ZlibWrapper zlibWrapper(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        contentEncoding = contentEncoding.trim();
+        if (HttpHeaderValues.GZIP.contentEqualsIgnoreCase(contentEncoding)
+                || HttpHeaderValues.X_GZIP.contentEqualsIgnoreCase(contentEncoding)) {
+            return ZlibWrapper.GZIP;
+        }
+        if (HttpHeaderValues.DEFLATE.contentEqualsIgnoreCase(contentEncoding)
+                || HttpHeaderValues.X_DEFLATE.contentEqualsIgnoreCase(contentEncoding)) {
+            return ZlibWrapper.ZLIB_OR_NONE;
+        }
+        return null; // identity 或不支持的编码, 原样返回
+    }
+
+    private static byte[] decode(byte[] body, ZlibWrapper wrapper) {
+        EmbeddedChannel decoder = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(wrapper));
+        try {
+            decoder.writeInbound(Unpooled.wrappedBuffer(body));
+            decoder.finish();
+            ByteBuf out = Unpooled.buffer(body.length * 4);
+            ByteBuf part;
+            while ((part = decoder.readInbound()) != null) {
+                out.writeBytes(part);
+                part.release();
+            }
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            decoder.finishAndReleaseAll();
+        }
+    }
+
     public static GatewayResponse buildGatewayResponse(Response response) {
         GatewayResponse gatewayResponse = new GatewayResponse();
         gatewayResponse.setResponseHeaders(response.getHeaders());
         gatewayResponse.setHttpResponseStatus(HttpResponseStatus.valueOf(response.getStatusCode()));
-        gatewayResponse.setContent(response.getResponseBody());
         gatewayResponse.setResponse(response);
 
         return gatewayResponse;
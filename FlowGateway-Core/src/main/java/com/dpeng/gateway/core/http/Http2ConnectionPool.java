@@ -0,0 +1,228 @@
+package com.dpeng.gateway.core.http;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.asynchttpclient.uri.Uri;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 单个事件循环的 h2c 连接池, 按 host:port 分组。
+ * 请求优先复用已有连接上的空闲流, 所有连接的并发流都达到下游 SETTINGS_MAX_CONCURRENT_STREAMS 时才新建连接,
+ * 连接数达到上限后请求排队, 等有流结束再发出。
+ * 连接在收到下游 SETTINGS 前被关闭说明下游不支持 h2c, 排队的请求回退到 http/1.1。
+ * 只在所属事件循环的线程中访问, 不需要加锁。
+ */
+@Slf4j
+public class Http2ConnectionPool {
+
+    // 收到下游 SETTINGS 前假定的并发流上限
+    private static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    private final NettyUpstreamClient client;
+
+    private final int maxConnectionsPerHost;
+
+    private final Map<String, List<Http2Connection>> connections = new HashMap<>();
+
+    private final Map<String, Deque<UpstreamExchange<?>>> pending = new HashMap<>();
+
+    public Http2ConnectionPool(NettyUpstreamClient client, int maxConnectionsPerHost) {
+        this.client = client;
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    /**
+     * 为请求分配一个流, 没有可用的流时排队
+     */
+    public void acquire(UpstreamExchange<?> exchange) {
+        pending.computeIfAbsent(exchange.getKey(), k -> new ArrayDeque<>()).offerLast(exchange);
+        dispatch(exchange.getKey(), exchange.getUri(), exchange.getEventLoop());
+    }
+
+    public int connectionCount(String key) {
+        List<Http2Connection> list = connections.get(key);
+        return list == null ? 0 : list.size();
+    }
+
+    private void dispatch(String key, Uri uri, EventLoop eventLoop) {
+        Deque<UpstreamExchange<?>> queue = pending.get(key);
+        if (queue == null) {
+            return;
+        }
+        List<Http2Connection> list = connections.computeIfAbsent(key, k -> new ArrayList<>());
+        UpstreamExchange<?> exchange;
+        while ((exchange = queue.peekFirst()) != null) {
+            if (exchange.isDone()) { // 排队期间已超时
+                queue.pollFirst();
+                continue;
+            }
+            Http2Connection connection = available(list);
+            if (connection == null) {
+                break;
+            }
+            queue.pollFirst();
+            connection.openStream(exchange);
+        }
+        if (queue.isEmpty()) {
+            pending.remove(key);
+            return;
+        }
+        // 仍有请求排队, 没有正在建立的连接且未达到连接数上限时新建连接
+        if (list.size() < maxConnectionsPerHost && list.stream().allMatch(c -> c.ready)) {
+            Http2Connection connection = new Http2Connection(key, uri, eventLoop);
+            list.add(connection);
+            connection.connect();
+        }
+    }
+
+    private Http2Connection available(List<Http2Connection> list) {
+        for (Http2Connection connection : list) {
+            if (connection.ready && !connection.goAway && connection.activeStreams < connection.maxConcurrentStreams) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private void removeConnection(Http2Connection connection) {
+        List<Http2Connection> list = connections.get(connection.key);
+        if (list != null) {
+            list.remove(connection);
+            if (list.isEmpty()) {
+                connections.remove(connection.key);
+            }
+        }
+    }
+
+    /**
+     * 取出排队的请求, 交给 action 处理
+     */
+    private void drainPending(String key, Consumer<UpstreamExchange<?>> action) {
+        Deque<UpstreamExchange<?>> queue = pending.remove(key);
+        if (queue != null) {
+            queue.forEach(action);
+        }
+    }
+
+    /**
+     * 一个到下游的 h2c 连接
+     */
+    private class Http2Connection extends ChannelInboundHandlerAdapter {
+
+        private final String key;
+
+        private final Uri uri;
+
+        private final EventLoop eventLoop;
+
+        private Channel channel;
+
+        private boolean ready;
+
+        private boolean goAway;
+
+        private boolean served;
+
+        private int activeStreams;
+
+        private int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
+        private Http2Connection(String key, Uri uri, EventLoop eventLoop) {
+            this.key = key;
+            this.uri = uri;
+            this.eventLoop = eventLoop;
+        }
+
+        private void connect() {
+            client.connectHttp2(uri, eventLoop, this).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) { // 下游不可达, 没有其他连接时与 http/1.1 连接失败一样直接失败
+                    removeConnection(this);
+                    if (connectionCount(key) == 0) {
+                        drainPending(key, exchange -> exchange.fail(future.cause()));
+                    } else { // 排队的请求交给剩余的连接, 都已满时再新建连接
+                        dispatch(key, uri, eventLoop);
+                    }
+                    return;
+                }
+                channel = future.channel();
+                channel.closeFuture().addListener(f -> onClosed());
+            });
+        }
+
+        private void openStream(UpstreamExchange<?> exchange) {
+            activeStreams++;
+            boolean reused = served;
+            served = true;
+            new Http2StreamChannelBootstrap(channel).handler(client.streamInitializer()).open()
+                    .addListener(future -> {
+                        if (!future.isSuccess()) {
+                            streamClosed();
+                            exchange.fail(future.cause());
+                            return;
+                        }
+                        Http2StreamChannel stream = (Http2StreamChannel) future.getNow();
+                        stream.closeFuture().addListener(f -> streamClosed());
+                        exchange.onStream(stream, reused);
+                    });
+        }
+
+        private void streamClosed() {
+            activeStreams--;
+            dispatch(key, uri, eventLoop);
+        }
+
+        private void onClosed() {
+            removeConnection(this);
+            if (!ready) {
+                // 收到 SETTINGS 前被关闭, 下游不支持 h2c
+                log.warn("upstream {} does not support h2c, fall back to http/1.1", key);
+                client.markHttp1Only(key);
+                drainPending(key, client::dispatch);
+                return;
+            }
+            dispatch(key, uri, eventLoop);
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.flush(); // 编解码器只写入了连接前言和 SETTINGS, 需要立即发出才能收到下游的 SETTINGS
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (msg instanceof Http2SettingsFrame settingsFrame) {
+                    Long max = settingsFrame.settings().maxConcurrentStreams();
+                    if (max != null) {
+                        maxConcurrentStreams = (int) Math.min(max, Integer.MAX_VALUE);
+                    }
+                    ready = true;
+                    dispatch(key, uri, eventLoop);
+                } else if (msg instanceof Http2GoAwayFrame) {
+                    // 下游不再接受新的流, 已有的流处理完后连接会被关闭, 新请求走其他连接
+                    goAway = true;
+                    removeConnection(this);
+                    dispatch(key, uri, eventLoop);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.debug("h2c connection to {} error", key, cause);
+            ctx.close();
+        }
+
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.dpeng.gateway.core.http;
 
 
+import com.dpeng.gateway.common.enums.UpstreamProtocolEnum;
+import io.netty.channel.EventLoop;
+import org.asynchttpclient.AsyncCompletionHandlerBase;
+import org.asynchttpclient.AsyncHandler;
 import org.asynchttpclient.AsyncHttpClient;
 import org.asynchttpclient.ListenableFuture;
 import org.asynchttpclient.Request;
@@ -8,10 +12,15 @@ import org.asynchttpclient.Response;
 
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * 下游 http 客户端门面, 底层是 async-http-client 或原生 netty 客户端
+ */
 public class HttpClient {
 
     private AsyncHttpClient asyncHttpClient;
 
+    private NettyUpstreamClient nettyUpstreamClient;
+
     private HttpClient() {
     }
 
@@ -25,10 +34,50 @@ public class HttpClient {
         this.asyncHttpClient = asyncHttpClient;
     }
 
+    public void initialized(NettyUpstreamClient nettyUpstreamClient) {
+        this.nettyUpstreamClient = nettyUpstreamClient;
+    }
+
     public CompletableFuture<Response> executeRequest(Request request) {
+        return executeRequest(request, (EventLoop) null);
+    }
+
+    /**
+     * eventLoop 为客户端连接所在的事件循环, 原生 netty 客户端在该事件循环上发出请求并回调结果
+     */
+    public CompletableFuture<Response> executeRequest(Request request, EventLoop eventLoop) {
+        return executeRequest(request, eventLoop, UpstreamProtocolEnum.HTTP1_1);
+    }
+
+    /**
+     * protocol 为与下游通信的协议, async-http-client 只支持 http/1.1, 忽略该参数
+     */
+    public CompletableFuture<Response> executeRequest(Request request, EventLoop eventLoop, UpstreamProtocolEnum protocol) {
+        if (nettyUpstreamClient != null) {
+            return nettyUpstreamClient.execute(request, new AsyncCompletionHandlerBase(), eventLoop, protocol);
+        }
         ListenableFuture<Response> future = asyncHttpClient.executeRequest(request);
         return future.toCompletableFuture();
     }
 
+    /**
+     * 由 handler 逐步处理响应, 用于流式转发等不需要聚合完整响应的场景
+     */
+    public <T> CompletableFuture<T> executeRequest(Request request, AsyncHandler<T> handler) {
+        return executeRequest(request, handler, null);
+    }
+
+    public <T> CompletableFuture<T> executeRequest(Request request, AsyncHandler<T> handler, EventLoop eventLoop) {
+        return executeRequest(request, handler, eventLoop, UpstreamProtocolEnum.HTTP1_1);
+    }
+
+    public <T> CompletableFuture<T> executeRequest(Request request, AsyncHandler<T> handler, EventLoop eventLoop,
+                                                   UpstreamProtocolEnum protocol) {
+        if (nettyUpstreamClient != null) {
+            return nettyUpstreamClient.execute(request, handler, eventLoop, protocol);
+        }
+        ListenableFuture<T> future = asyncHttpClient.executeRequest(request, handler);
+        return future.toCompletableFuture();
+    }
 
 }
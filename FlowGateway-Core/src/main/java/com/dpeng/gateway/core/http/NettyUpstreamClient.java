@@ -0,0 +1,357 @@
+package com.dpeng.gateway.core.http;
+
+import com.dpeng.gateway.common.enums.UpstreamProtocolEnum;
+import com.dpeng.gateway.config.config.HttpClientConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+import lombok.extern.slf4j.Slf4j;
+import org.asynchttpclient.AsyncHandler;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.uri.Uri;
+
+import javax.net.ssl.SSLException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 原生 netty 下游客户端, 复用服务端的 worker 事件循环。
+ * 请求在接收它的事件循环上发出, 连接池按事件循环隔离 (每个事件循环一个 UpstreamConnectionPool, 按 host:port 分组),
+ * 下游响应也在同一个事件循环上回调, 整个请求没有跨线程切换, 连接池也不需要加锁。
+ * 开启 h2c 的请求走 Http2ConnectionPool, 多个请求复用少量连接, 下游不支持 h2c 时在一段时间内回退到 http/1.1。
+ */
+@Slf4j
+public class NettyUpstreamClient {
+
+    static final AttributeKey<UpstreamExchange<?>> EXCHANGE = AttributeKey.valueOf("upstreamExchange");
+
+    private static final AttributeKey<String> POOL_KEY = AttributeKey.valueOf("upstreamPoolKey");
+
+    private final HttpClientConfig httpClientConfig;
+
+    private final EventLoopGroup eventLoopGroup;
+
+    private final Class<? extends SocketChannel> channelClass;
+
+    private final FastThreadLocal<UpstreamConnectionPool> pools = new FastThreadLocal<>() {
+        @Override
+        protected UpstreamConnectionPool initialValue() {
+            return new UpstreamConnectionPool(httpClientConfig.getHttpMaxIdleConnectionsPerLoop(),
+                    httpClientConfig.getHttpPooledConnectionIdleTimeout());
+        }
+    };
+
+    private final FastThreadLocal<Http2ConnectionPool> http2Pools = new FastThreadLocal<>() {
+        @Override
+        protected Http2ConnectionPool initialValue() {
+            return new Http2ConnectionPool(NettyUpstreamClient.this, httpClientConfig.getHttp2MaxConnectionsPerLoop());
+        }
+    };
+
+    // 不支持 h2c 的下游地址及回退到 http/1.1 的截止时间
+    private final Map<String, Long> http1OnlyUntil = new ConcurrentHashMap<>();
+
+    private volatile SslContext sslContext;
+
+    public NettyUpstreamClient(HttpClientConfig httpClientConfig, EventLoopGroup eventLoopGroup,
+                               Class<? extends SocketChannel> channelClass) {
+        this.httpClientConfig = httpClientConfig;
+        this.eventLoopGroup = eventLoopGroup;
+        this.channelClass = channelClass;
+    }
+
+    static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * 在 eventLoop 上执行请求, eventLoop 为空时任选一个
+     */
+    public <T> CompletableFuture<T> execute(Request request, AsyncHandler<T> handler, EventLoop eventLoop) {
+        return execute(request, handler, eventLoop, UpstreamProtocolEnum.HTTP1_1);
+    }
+
+    /**
+     * 按 protocol 发送请求, h2c 只支持 http 地址, https 地址仍走 http/1.1
+     */
+    public <T> CompletableFuture<T> execute(Request request, AsyncHandler<T> handler, EventLoop eventLoop,
+                                            UpstreamProtocolEnum protocol) {
+        EventLoop loop = eventLoop != null ? eventLoop : eventLoopGroup.next();
+        boolean http2 = protocol == UpstreamProtocolEnum.H2C && !request.getUri().isSecured();
+        UpstreamExchange<T> exchange = new UpstreamExchange<>(this, request, handler, http2);
+        if (loop.inEventLoop()) {
+            send(exchange, loop, request);
+        } else {
+            loop.execute(() -> send(exchange, loop, request));
+        }
+        return exchange.future();
+    }
+
+    private void send(UpstreamExchange<?> exchange, EventLoop loop, Request request) {
+        int requestTimeout = request.getRequestTimeout() > 0 ? request.getRequestTimeout()
+                : httpClientConfig.getHttpRequestTimeout();
+        exchange.start(loop, requestTimeout);
+        dispatch(exchange);
+    }
+
+    /**
+     * 按协议为请求分配连接, 在请求所在的事件循环中调用
+     */
+    void dispatch(UpstreamExchange<?> exchange) {
+        if (exchange.isHttp2() && !isHttp1Only(exchange.getKey())) {
+            http2Pools.get().acquire(exchange);
+            return;
+        }
+        Channel channel = pools.get().poll(exchange.getKey());
+        if (channel != null) {
+            exchange.onPooled(channel);
+        } else {
+            connect(exchange);
+        }
+    }
+
+    /**
+     * 复用的连接在收到响应前被关闭, http/1.1 换新连接重发, h2c 重新分配流
+     */
+    void retry(UpstreamExchange<?> exchange) {
+        if (exchange.isHttp2()) {
+            dispatch(exchange);
+        } else {
+            connect(exchange);
+        }
+    }
+
+    private boolean isHttp1Only(String key) {
+        Long until = http1OnlyUntil.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < until) {
+            return true;
+        }
+        http1OnlyUntil.remove(key, until);
+        return false;
+    }
+
+    void markHttp1Only(String key) {
+        http1OnlyUntil.put(key, System.currentTimeMillis() + httpClientConfig.getHttp2FallbackTtl());
+    }
+
+    /**
+     * 为请求新建连接, 注册在请求所在的事件循环上
+     */
+    void connect(UpstreamExchange<?> exchange) {
+        connect(exchange.getUri(), exchange.getEventLoop()).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                exchange.onConnected(future.channel());
+            } else {
+                exchange.fail(future.cause());
+            }
+        });
+    }
+
+    /**
+     * 在 eventLoop 上建立到 uri 的连接
+     */
+    ChannelFuture connect(Uri uri, EventLoop eventLoop) {
+        String host = uri.getHost();
+        int port = uri.getExplicitPort();
+        SslContext ssl = uri.isSecured() ? sslContext() : null;
+        return bootstrap(host, port, eventLoop)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        pools.get().track(key(host, port), ch);
+                        if (ssl != null) {
+                            ch.pipeline().addLast(ssl.newHandler(ch.alloc(), host, port));
+                        }
+                        ch.pipeline().addLast(new HttpClientCodec());
+                        if (!httpClientConfig.isCompressionPassThrough()) {
+                            ch.pipeline().addLast(new HttpContentDecompressor());
+                        }
+                        ch.pipeline().addLast(new UpstreamHandler());
+                    }
+                })
+                .connect(host, port);
+    }
+
+    /**
+     * 以 prior knowledge 方式建立 h2c 连接, connectionHandler 处理连接级别的帧 (SETTINGS、GOAWAY)
+     */
+    ChannelFuture connectHttp2(Uri uri, EventLoop eventLoop, ChannelHandler connectionHandler) {
+        String host = uri.getHost();
+        int port = uri.getExplicitPort();
+        return bootstrap(host, port, eventLoop)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(Http2FrameCodecBuilder.forClient().build(),
+                                new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()), // 不接收服务端推送
+                                connectionHandler);
+                    }
+                })
+                .connect(host, port);
+    }
+
+    /**
+     * h2c 流的处理器, 流上收发的 http/2 帧转换为 http/1.1 对象, 请求交换的处理与 http/1.1 连接一致
+     */
+    ChannelHandler streamInitializer() {
+        return new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+                if (!httpClientConfig.isCompressionPassThrough()) {
+                    ch.pipeline().addLast(new HttpContentDecompressor());
+                }
+                ch.pipeline().addLast(new UpstreamHandler());
+            }
+        };
+    }
+
+    private Bootstrap bootstrap(String host, int port, EventLoop eventLoop) {
+        return new Bootstrap()
+                .group(eventLoop)
+                .channel(channelClass)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, httpClientConfig.getHttpConnectTimeout())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .attr(POOL_KEY, key(host, port));
+    }
+
+    /**
+     * 在 eventLoop 上把 uri 的空闲连接补足到 count 个, 已有的空闲连接和正在建立的连接都计算在内
+     */
+    public void prewarm(Uri uri, int count, EventLoop eventLoop) {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> prewarm(uri, count, eventLoop));
+            return;
+        }
+        String key = key(uri.getHost(), uri.getExplicitPort());
+        UpstreamConnectionPool pool = pools.get();
+        pool.undrain(key);
+        pool.evictExpired(key);
+        int missing = count - pool.idleCount(key) - pool.connectingCount(key);
+        for (int i = 0; i < missing; i++) {
+            pool.connectStarted(key);
+            connect(uri, eventLoop).addListener((ChannelFutureListener) future -> {
+                pool.connectFinished(key);
+                if (future.isSuccess()) {
+                    release(future.channel(), true);
+                } else {
+                    log.debug("prewarm connection to {} failed", key, future.cause());
+                }
+            });
+        }
+    }
+
+    /**
+     * 在 eventLoop 上排空到 host:port 的连接, 空闲连接立即关闭, 使用中的连接在请求结束后关闭
+     */
+    public void drain(String host, int port, EventLoop eventLoop) {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> drain(host, port, eventLoop));
+            return;
+        }
+        pools.get().drain(key(host, port));
+    }
+
+    /**
+     * 请求结束后归还连接, 不可复用或连接池已满时关闭
+     */
+    void release(Channel channel, boolean reusable) {
+        if (channel instanceof Http2StreamChannel) { // 流只用一次, 关闭后连接上的并发数减一
+            channel.close();
+            return;
+        }
+        if (reusable && channel.isActive()) {
+            channel.config().setAutoRead(true); // 流式响应可能暂停过读取
+            if (pools.get().offer(channel.attr(POOL_KEY).get(), channel)) {
+                return;
+            }
+        }
+        channel.close();
+    }
+
+    private SslContext sslContext() {
+        SslContext context = sslContext;
+        if (context == null) {
+            synchronized (this) {
+                if (sslContext == null) {
+                    try {
+                        sslContext = SslContextBuilder.forClient().build();
+                    } catch (SSLException e) {
+                        throw new IllegalStateException("create ssl context failed", e);
+                    }
+                }
+                context = sslContext;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * 下游连接上的处理器, 把事件转给当前的请求交换
+     */
+    private class UpstreamHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                UpstreamExchange<?> exchange = ctx.channel().attr(EXCHANGE).get();
+                if (exchange != null) {
+                    exchange.onMessage(msg);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            UpstreamExchange<?> exchange = ctx.channel().attr(EXCHANGE).get();
+            if (exchange != null && ctx.channel().isWritable()) {
+                exchange.onWritable();
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            UpstreamExchange<?> exchange = ctx.channel().attr(EXCHANGE).getAndSet(null);
+            if (exchange != null) {
+                exchange.onClosed();
+            } else if (ctx.channel().hasAttr(POOL_KEY)) { // 空闲连接被下游关闭
+                pools.get().remove(ctx.channel().attr(POOL_KEY).get(), ctx.channel());
+            }
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            UpstreamExchange<?> exchange = ctx.channel().attr(EXCHANGE).get();
+            if (exchange != null) {
+                exchange.fail(cause);
+            } else {
+                log.warn("upstream idle connection error {}", ctx.channel(), cause);
+                ctx.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.dpeng.gateway.core.http;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.*;
+
+/**
+ * 单个事件循环的下游连接池, 按 host:port 分组保存空闲连接。
+ * 只在所属事件循环的线程中访问, 不需要加锁; 连接也都注册在这个事件循环上。
+ */
+public class UpstreamConnectionPool {
+
+    private static final AttributeKey<Long> IDLE_SINCE = AttributeKey.valueOf("upstreamIdleSince");
+
+    private final Map<String, Deque<Channel>> idleChannels = new HashMap<>();
+
+    // 正在为预热建立的连接数
+    private final Map<String, Integer> connecting = new HashMap<>();
+
+    // 每个 host:port 尚未关闭的 http/1.1 连接数 (空闲和使用中), 没有连接时不保留条目
+    private final Map<String, Integer> openChannels = new HashMap<>();
+
+    // 已下线且仍有连接未关闭的实例, 不再接收归还的连接, 最后一个连接关闭后移除
+    private final Set<String> draining = new HashSet<>();
+
+    private final int maxIdlePerHost;
+
+    private final long idleTimeoutMillis;
+
+    public UpstreamConnectionPool(int maxIdlePerHost, long idleTimeoutMillis) {
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * 取出一个可用的空闲连接, 最近归还的优先, 已关闭或空闲超时的连接直接关闭丢弃
+     */
+    public Channel poll(String key) {
+        Deque<Channel> channels = idleChannels.get(key);
+        if (channels == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Channel channel;
+        while ((channel = channels.pollFirst()) != null) {
+            Long idleSince = channel.attr(IDLE_SINCE).getAndSet(null);
+            if (channel.isActive() && (idleSince == null || now - idleSince < idleTimeoutMillis)) {
+                return channel;
+            }
+            channel.close();
+        }
+        return null;
+    }
+
+    /**
+     * 归还连接, 超过空闲上限时返回 false, 由调用方关闭
+     */
+    public boolean offer(String key, Channel channel) {
+        if (draining.contains(key)) {
+            return false;
+        }
+        Deque<Channel> channels = idleChannels.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (channels.size() >= maxIdlePerHost || !channel.isActive()) {
+            return false;
+        }
+        channel.attr(IDLE_SINCE).set(System.currentTimeMillis());
+        channels.offerFirst(channel);
+        return true;
+    }
+
+    /**
+     * 空闲连接被下游关闭时移出连接池
+     */
+    public void remove(String key, Channel channel) {
+        Deque<Channel> channels = idleChannels.get(key);
+        if (channels != null) {
+            channels.remove(channel);
+        }
+    }
+
+    public int idleCount(String key) {
+        Deque<Channel> channels = idleChannels.get(key);
+        return channels == null ? 0 : channels.size();
+    }
+
+    /**
+     * 关闭空闲超时的连接
+     */
+    public void evictExpired(String key) {
+        Deque<Channel> channels = idleChannels.get(key);
+        if (channels == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        channels.removeIf(channel -> {
+            Long idleSince = channel.attr(IDLE_SINCE).get();
+            if (channel.isActive() && (idleSince == null || now - idleSince < idleTimeoutMillis)) {
+                return false;
+            }
+            channel.close();
+            return true;
+        });
+    }
+
+    public int connectingCount(String key) {
+        return connecting.getOrDefault(key, 0);
+    }
+
+    public void connectStarted(String key) {
+        connecting.merge(key, 1, Integer::sum);
+    }
+
+    public void connectFinished(String key) {
+        connecting.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    /**
+     * 记录新建的连接, 连接关闭时自动减去
+     */
+    public void track(String key, Channel channel) {
+        openChannels.merge(key, 1, Integer::sum);
+        channel.closeFuture().addListener(future -> channelClosed(key));
+    }
+
+    private void channelClosed(String key) {
+        if (openChannels.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null) == null) {
+            draining.remove(key); // 实例的连接已全部关闭, 滚动发布时下线的实例不会一直留在 draining 中
+        }
+    }
+
+    /**
+     * 实例下线: 关闭空闲连接, 正在使用的连接等请求结束后归还时再关闭
+     */
+    public void drain(String key) {
+        if (!openChannels.containsKey(key)) {
+            return;
+        }
+        draining.add(key);
+        Deque<Channel> channels = idleChannels.remove(key);
+        if (channels != null) {
+            channels.forEach(Channel::close);
+        }
+    }
+
+    /**
+     * 实例重新上线, 恢复接收归还的连接
+     */
+    public void undrain(String key) {
+        draining.remove(key);
+    }
+
+    public boolean isDraining(String key) {
+        return draining.contains(key);
+    }
+
+}
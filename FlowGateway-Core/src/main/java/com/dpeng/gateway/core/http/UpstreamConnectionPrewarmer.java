@@ -0,0 +1,103 @@
+package com.dpeng.gateway.core.http;
+
+import com.dpeng.gateway.config.config.manager.InstanceListener;
+import com.dpeng.gateway.config.pojo.ServiceInstance;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.asynchttpclient.uri.Uri;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 下游连接预热, 监听服务实例变化:
+ * 新实例上线时在每个事件循环上预先建立若干长连接, 并定期补足被关闭或空闲超时的连接;
+ * 实例下线时排空连接, 空闲连接立即关闭, 正在处理请求的连接等请求结束后再关闭。
+ */
+@Slf4j
+public class UpstreamConnectionPrewarmer implements InstanceListener {
+
+    private final NettyUpstreamClient client;
+
+    private final EventLoopGroup eventLoopGroup;
+
+    private final int connectionsPerLoop;
+
+    private final long checkIntervalMillis;
+
+    // host:port 对应的预热目标, 同一个地址可能属于多个服务
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    private final List<ScheduledFuture<?>> scheduledFutures = new ArrayList<>();
+
+    public UpstreamConnectionPrewarmer(NettyUpstreamClient client, EventLoopGroup eventLoopGroup,
+                                       int connectionsPerLoop, long checkIntervalMillis) {
+        this.client = client;
+        this.eventLoopGroup = eventLoopGroup;
+        this.connectionsPerLoop = connectionsPerLoop;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    public void start() {
+        if (checkIntervalMillis <= 0) return;
+        for (EventExecutor executor : eventLoopGroup) {
+            EventLoop eventLoop = (EventLoop) executor;
+            scheduledFutures.add(eventLoop.scheduleAtFixedRate(() -> topUp(eventLoop),
+                    checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    public void shutdown() {
+        scheduledFutures.forEach(future -> future.cancel(false));
+        scheduledFutures.clear();
+    }
+
+    @Override
+    public void changeOnInstances(String serviceName, Collection<ServiceInstance> added, Collection<ServiceInstance> removed) {
+        for (ServiceInstance instance : removed) {
+            String key = NettyUpstreamClient.key(instance.getIp(), instance.getPort());
+            Target target = targets.computeIfPresent(key, (k, v) -> v.services.remove(serviceName) && v.services.isEmpty() ? null : v);
+            if (target == null) {
+                log.info("drain upstream connections to {}", key);
+                forEachLoop(eventLoop -> client.drain(instance.getIp(), instance.getPort(), eventLoop));
+            }
+        }
+        for (ServiceInstance instance : added) {
+            if (!instance.isEnabled()) continue;
+            String key = NettyUpstreamClient.key(instance.getIp(), instance.getPort());
+            Target target = targets.computeIfAbsent(key, k -> new Target(Uri.create("http://" + key)));
+            target.services.add(serviceName);
+            forEachLoop(eventLoop -> client.prewarm(target.uri, connectionsPerLoop, eventLoop));
+        }
+    }
+
+    private void topUp(EventLoop eventLoop) {
+        for (Target target : targets.values()) {
+            client.prewarm(target.uri, connectionsPerLoop, eventLoop);
+        }
+    }
+
+    private void forEachLoop(Consumer<EventLoop> action) {
+        for (EventExecutor executor : eventLoopGroup) {
+            action.accept((EventLoop) executor);
+        }
+    }
+
+    private static class Target {
+
+        private final Uri uri;
+
+        private final Set<String> services = ConcurrentHashMap.newKeySet();
+
+        private Target(Uri uri) {
+            this.uri = uri;
+        }
+
+    }
+
+}
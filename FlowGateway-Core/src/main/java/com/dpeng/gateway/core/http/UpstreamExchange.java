@@ -0,0 +1,371 @@
+package com.dpeng.gateway.core.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.asynchttpclient.AsyncHandler;
+import org.asynchttpclient.HttpResponseHeaders;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.handler.AsyncHandlerExtensions;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import org.asynchttpclient.request.body.generator.FeedListener;
+import org.asynchttpclient.request.body.generator.FeedableBodyGenerator;
+import org.asynchttpclient.uri.Uri;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 原生 netty 客户端的一次请求-响应交换, 把下游响应逐步回调给 AsyncHandler,
+ * 这样调用方 (普通转发、流式响应) 不需要区分底层客户端。
+ * 除构造外所有方法都在连接所属的事件循环中执行。
+ */
+@Slf4j
+public class UpstreamExchange<T> {
+
+    private static final int BODY_CHUNK_SIZE = 8 * 1024;
+
+    private final NettyUpstreamClient client;
+
+    private final Request request;
+
+    private final AsyncHandler<T> handler;
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private final Uri uri;
+
+    private final String key;
+
+    /**
+     * 是否通过 h2c 发送, 此时 channel 是 http/2 流
+     */
+    private final boolean http2;
+
+    private EventLoop eventLoop;
+
+    private Channel channel;
+
+    /**
+     * 当前连接是否取自连接池, 连接池中的连接可能已被下游关闭, 这种情况下允许换新连接重发一次
+     */
+    private boolean reused;
+
+    private boolean retried;
+
+    private boolean responseStarted;
+
+    private boolean requestSent;
+
+    private boolean keepAlive;
+
+    private boolean done;
+
+    private Body body;
+
+    private ScheduledFuture<?> timeoutFuture;
+
+    public UpstreamExchange(NettyUpstreamClient client, Request request, AsyncHandler<T> handler, boolean http2) {
+        this.client = client;
+        this.request = request;
+        this.handler = handler;
+        this.uri = request.getUri();
+        this.key = NettyUpstreamClient.key(uri.getHost(), uri.getExplicitPort());
+        this.http2 = http2;
+    }
+
+    public CompletableFuture<T> future() {
+        return future;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * 在 eventLoop 上开始请求, 同时开始计算请求超时
+     */
+    void start(EventLoop eventLoop, long timeoutMillis) {
+        this.eventLoop = eventLoop;
+        if (timeoutMillis > 0) {
+            timeoutFuture = eventLoop.schedule(
+                    () -> fail(new TimeoutException("request timeout to " + key + " after " + timeoutMillis + " ms")),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 新建连接成功
+     */
+    void onConnected(Channel channel) {
+        if (handler instanceof AsyncHandlerExtensions extensions) {
+            extensions.onTcpConnectSuccess((InetSocketAddress) channel.remoteAddress(), channel);
+        }
+        writeRequest(channel, false);
+    }
+
+    /**
+     * 复用连接池中的连接
+     */
+    void onPooled(Channel channel) {
+        if (handler instanceof AsyncHandlerExtensions extensions) {
+            extensions.onConnectionPooled(channel);
+        }
+        writeRequest(channel, true);
+    }
+
+    /**
+     * 在 h2c 连接上打开的流, reused 表示连接之前已经处理过请求
+     */
+    void onStream(Channel stream, boolean reused) {
+        if (handler instanceof AsyncHandlerExtensions extensions) {
+            extensions.onConnectionPooled(stream);
+        }
+        writeRequest(stream, reused);
+    }
+
+    private void writeRequest(Channel channel, boolean reused) {
+        if (done) {
+            client.release(channel, true);
+            return;
+        }
+        this.channel = channel;
+        this.reused = reused;
+        channel.attr(NettyUpstreamClient.EXCHANGE).set(this);
+
+        HttpHeaders headers = new DefaultHttpHeaders().add(request.getHeaders());
+        if (!headers.contains(HttpHeaderNames.HOST)) {
+            headers.set(HttpHeaderNames.HOST, uri.getHost() + ":" + uri.getExplicitPort());
+        }
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        String relativeUrl = uri.toRelativeUrl();
+
+        BodyGenerator bodyGenerator = request.getBodyGenerator();
+        if (bodyGenerator != null) { // 流式请求体, 先发请求头, 请求体边收边发
+            body = bodyGenerator.createBody();
+            long contentLength = body.getContentLength();
+            if (contentLength >= 0) {
+                headers.set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+                headers.remove(HttpHeaderNames.TRANSFER_ENCODING);
+            } else {
+                headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+                headers.set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+            }
+            channel.write(new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, relativeUrl, headers))
+                    .addListener(this::onWriteComplete);
+            if (bodyGenerator instanceof FeedableBodyGenerator feedable) {
+                feedable.setListener(new FeedListener() {
+                    @Override
+                    public void onContentAdded() {
+                        channel.eventLoop().execute(UpstreamExchange.this::pumpBody);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        channel.eventLoop().execute(() -> fail(t));
+                    }
+                });
+            }
+            pumpBody();
+            return;
+        }
+
+        ByteBuffer data = request.getByteBufferData();
+        ByteBuf content = data == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(data); // 直接包装, 不拷贝
+        if (content.isReadable()) {
+            headers.set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+            headers.remove(HttpHeaderNames.TRANSFER_ENCODING);
+        }
+        FullHttpRequest fullHttpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, relativeUrl,
+                content, headers, EmptyHttpHeaders.INSTANCE);
+        channel.writeAndFlush(fullHttpRequest).addListener(this::onWriteComplete);
+        requestSent = true;
+    }
+
+    private void onWriteComplete(io.netty.util.concurrent.Future<? super Void> writeFuture) {
+        if (!writeFuture.isSuccess()) {
+            fail(writeFuture.cause());
+        }
+    }
+
+    /**
+     * 把流式请求体写给下游, 下游不可写或暂时没有数据时暂停, 可写或有新数据时再继续
+     */
+    void pumpBody() {
+        if (done || body == null || requestSent) {
+            return;
+        }
+        try {
+            while (channel.isWritable()) {
+                ByteBuf buf = channel.alloc().buffer(BODY_CHUNK_SIZE);
+                Body.BodyState state;
+                try {
+                    state = body.transferTo(buf);
+                } catch (Throwable t) {
+                    buf.release();
+                    throw t;
+                }
+                if (buf.isReadable()) {
+                    channel.write(new DefaultHttpContent(buf)).addListener(this::onWriteComplete);
+                } else {
+                    buf.release();
+                }
+                if (state == Body.BodyState.STOP) {
+                    requestSent = true;
+                    closeBody();
+                    channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(this::onWriteComplete);
+                    return;
+                }
+                if (state == Body.BodyState.SUSPEND) {
+                    break;
+                }
+            }
+            channel.flush();
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    void onMessage(Object msg) {
+        if (done) {
+            return;
+        }
+        try {
+            if (msg instanceof HttpResponse response) {
+                response.headers().remove(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text()); // http/2 转换时加入的内部头
+                if (response.status().codeClass() == HttpStatusClass.INFORMATIONAL
+                        && response.status().code() != HttpResponseStatus.SWITCHING_PROTOCOLS.code()) {
+                    return; // 忽略 100 Continue 等中间响应
+                }
+                responseStarted = true;
+                keepAlive = HttpUtil.isKeepAlive(response);
+                if (handler.onStatusReceived(new UpstreamResponseStatus(uri, response, channel)) == AsyncHandler.State.ABORT
+                        || handler.onHeadersReceived(new HttpResponseHeaders(response.headers())) == AsyncHandler.State.ABORT) {
+                    abort();
+                    return;
+                }
+            }
+            if (msg instanceof HttpContent content) {
+                boolean last = content instanceof LastHttpContent;
+                if (content.content().isReadable() || last) {
+                    if (handler.onBodyPartReceived(new EagerResponseBodyPart(content.content(), last)) == AsyncHandler.State.ABORT) {
+                        abort();
+                        return;
+                    }
+                }
+                if (last) {
+                    HttpHeaders trailingHeaders = ((LastHttpContent) content).trailingHeaders();
+                    if (!trailingHeaders.isEmpty()) {
+                        handler.onHeadersReceived(new HttpResponseHeaders(trailingHeaders, true));
+                    }
+                    complete(keepAlive && requestSent);
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    /**
+     * 连接被关闭, 复用的连接在收到响应前被关闭时换新连接重发一次
+     */
+    void onClosed() {
+        if (done) {
+            return;
+        }
+        if (reused && !retried && !responseStarted && request.getBodyGenerator() == null) {
+            retried = true;
+            channel = null;
+            client.retry(this);
+            return;
+        }
+        fail(new IOException("upstream connection closed: " + key));
+    }
+
+    void fail(Throwable cause) {
+        if (done) {
+            return;
+        }
+        done = true;
+        cancelTimeout();
+        closeBody();
+        if (channel != null) {
+            channel.attr(NettyUpstreamClient.EXCHANGE).set(null);
+            channel.close();
+        }
+        try {
+            handler.onThrowable(cause);
+        } catch (Throwable t) {
+            log.warn("async handler onThrowable error", t);
+        }
+        future.completeExceptionally(cause);
+    }
+
+    private void abort() {
+        complete(false);
+    }
+
+    private void complete(boolean reusable) {
+        done = true;
+        cancelTimeout();
+        closeBody();
+        channel.attr(NettyUpstreamClient.EXCHANGE).set(null);
+        client.release(channel, reusable);
+        try {
+            future.complete(handler.onCompleted());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private void cancelTimeout() {
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+        }
+    }
+
+    private void closeBody() {
+        if (body != null) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                log.warn("close request body error", e);
+            }
+        }
+    }
+
+    /**
+     * 连接恢复可写时继续写流式请求体
+     */
+    void onWritable() {
+        pumpBody();
+    }
+
+}
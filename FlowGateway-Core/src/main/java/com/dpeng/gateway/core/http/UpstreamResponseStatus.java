@@ -0,0 +1,68 @@
+package com.dpeng.gateway.core.http;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpResponse;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.uri.Uri;
+
+import java.net.SocketAddress;
+
+/**
+ * 原生 netty 客户端收到的下游响应状态, 适配为 async-http-client 的 HttpResponseStatus
+ */
+public class UpstreamResponseStatus extends HttpResponseStatus {
+
+    private final HttpResponse response;
+
+    private final SocketAddress remoteAddress;
+
+    private final SocketAddress localAddress;
+
+    public UpstreamResponseStatus(Uri uri, HttpResponse response, Channel channel) {
+        super(uri, null);
+        this.response = response;
+        this.remoteAddress = channel.remoteAddress();
+        this.localAddress = channel.localAddress();
+    }
+
+    @Override
+    public int getStatusCode() {
+        return response.status().code();
+    }
+
+    @Override
+    public String getStatusText() {
+        return response.status().reasonPhrase();
+    }
+
+    @Override
+    public String getProtocolName() {
+        return response.protocolVersion().protocolName();
+    }
+
+    @Override
+    public int getProtocolMajorVersion() {
+        return response.protocolVersion().majorVersion();
+    }
+
+    @Override
+    public int getProtocolMinorVersion() {
+        return response.protocolVersion().minorVersion();
+    }
+
+    @Override
+    public String getProtocolText() {
+        return response.protocolVersion().text();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+}
@@ -1,19 +1,22 @@
 package com.dpeng.gateway.core.netty;
 
-import com.dpeng.gateway.common.util.SystemUtil;
+import com.dpeng.gateway.common.enums.HttpClientEnum;
+import com.dpeng.gateway.common.enums.TransportEnum;
+import com.dpeng.gateway.common.util.TransportUtil;
 import com.dpeng.gateway.config.config.Config;
 import com.dpeng.gateway.config.config.HttpClientConfig;
+import com.dpeng.gateway.config.config.manager.DynamicConfigManager;
 import com.dpeng.gateway.core.config.LifeCycle;
 import com.dpeng.gateway.core.http.HttpClient;
+import com.dpeng.gateway.core.http.NettyUpstreamClient;
+import com.dpeng.gateway.core.http.UpstreamConnectionPrewarmer;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.asynchttpclient.AsyncHttpClient;
 import org.asynchttpclient.DefaultAsyncHttpClient;
 import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.asynchttpclient.netty.channel.ChannelManager;
 
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -27,33 +30,64 @@ public class NettyHttpClient implements LifeCycle {
 
     private final AtomicBoolean start = new AtomicBoolean(false);
 
+    private final TransportEnum transport;
+
     private AsyncHttpClient asyncHttpClient;
 
-    public NettyHttpClient(Config config) {
+    private UpstreamConnectionPrewarmer prewarmer;
+
+    public NettyHttpClient(Config config, NettyHttpServer nettyHttpServer) {
         this.config = config;
-        if (SystemUtil.useEpoll()) {
-            this.eventLoopGroupWorker = new EpollEventLoopGroup(config.getHttpClient().getEventLoopGroupWorkerNum(),
-                    new DefaultThreadFactory("epoll-http-client-worker-nio"));
-        } else {
-            this.eventLoopGroupWorker = new NioEventLoopGroup(config.getHttpClient().getEventLoopGroupWorkerNum(),
-                    new DefaultThreadFactory("default-http-client-worker-nio"));
+        if (config.getHttpClient().getType() == HttpClientEnum.NETTY) {
+            // 原生客户端复用服务端的 worker 线程, 请求在接收它的事件循环上完成
+            this.eventLoopGroupWorker = nettyHttpServer.getEventLoopGroupWorker();
+            this.transport = nettyHttpServer.getTransport();
+            return;
         }
+        TransportEnum transport = config.getHttpClient().getTransport();
+        if (transport == TransportEnum.IO_URING) { // async-http-client 只识别 epoll 和 nio 的事件循环组
+            log.warn("http client does not support io_uring transport, fall back to epoll/nio");
+            transport = TransportEnum.AUTO;
+        }
+        this.transport = TransportUtil.resolve(transport);
+        this.eventLoopGroupWorker = TransportUtil.newEventLoopGroup(this.transport,
+                config.getHttpClient().getEventLoopGroupWorkerNum(), "http-client-worker-nio");
     }
 
     @Override
     public void start() {
         if (!start.compareAndSet(false, true)) return;
         HttpClientConfig httpClientConfig = config.getHttpClient();
+        if (httpClientConfig.getType() == HttpClientEnum.NETTY) {
+            NettyUpstreamClient nettyUpstreamClient = new NettyUpstreamClient(httpClientConfig, eventLoopGroupWorker,
+                    TransportUtil.socketChannelClass(transport));
+            HttpClient.getInstance().initialized(nettyUpstreamClient);
+            if (httpClientConfig.getPrewarmConnectionsPerLoop() > 0) { // 监听实例变化, 预先建立到下游实例的连接
+                prewarmer = new UpstreamConnectionPrewarmer(nettyUpstreamClient, eventLoopGroupWorker,
+                        httpClientConfig.getPrewarmConnectionsPerLoop(), httpClientConfig.getPrewarmCheckInterval());
+                prewarmer.start();
+                DynamicConfigManager.getInstance().addInstanceListener(prewarmer);
+            }
+            return;
+        }
+        if (httpClientConfig.getPrewarmConnectionsPerLoop() > 0) {
+            log.warn("prewarmConnectionsPerLoop only works with the {} http client, ignored for {}",
+                    HttpClientEnum.NETTY, httpClientConfig.getType());
+        }
         DefaultAsyncHttpClientConfig.Builder builder = new DefaultAsyncHttpClientConfig.Builder()
                 .setEventLoopGroup(eventLoopGroupWorker) // 使用传入的Netty事件循环组
                 .setConnectTimeout(httpClientConfig.getHttpConnectTimeout()) // 连接超时设置
                 .setRequestTimeout(httpClientConfig.getHttpRequestTimeout()) // 请求超时设置
                 .setMaxRedirects(httpClientConfig.getHttpMaxRedirects()) // 最大重定向次数
                 .setAllocator(PooledByteBufAllocator.DEFAULT) // 使用池化的ByteBuf分配器以提升性能
-                .setCompressionEnforced(true) // 强制压缩
+                .setCompressionEnforced(!httpClientConfig.isCompressionPassThrough()) // 强制压缩, 透传时由客户端的 Accept-Encoding 决定
                 .setMaxConnections(httpClientConfig.getHttpMaxConnections()) // 最大连接数
                 .setMaxConnectionsPerHost(httpClientConfig.getHttpConnectionsPerHost()) // 每个主机的最大连接数
                 .setPooledConnectionIdleTimeout(httpClientConfig.getHttpPooledConnectionIdleTimeout()); // 连接池中空闲连接的超时时间
+        if (httpClientConfig.isCompressionPassThrough()) {
+            // 去掉解压处理器, 下游的压缩响应原样转发给客户端
+            builder.setHttpAdditionalChannelInitializer(channel -> channel.pipeline().remove(ChannelManager.INFLATER_HANDLER));
+        }
         // 根据配置创建异步HTTP客户端
         this.asyncHttpClient = new DefaultAsyncHttpClient(builder.build());
         HttpClient.getInstance().initialized(asyncHttpClient);
@@ -62,6 +96,9 @@ public class NettyHttpClient implements LifeCycle {
     @Override
     public void shutdown() {
         if (!start.get()) return;
+        if (prewarmer != null) {
+            prewarmer.shutdown();
+        }
         if (asyncHttpClient != null) {
             try {
                 this.asyncHttpClient.close();
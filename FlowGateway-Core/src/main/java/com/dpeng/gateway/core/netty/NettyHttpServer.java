@@ -1,24 +1,18 @@
 package com.dpeng.gateway.core.netty;
 
-import com.dpeng.gateway.common.util.SystemUtil;
+import com.dpeng.gateway.common.enums.TransportEnum;
+import com.dpeng.gateway.common.util.TransportUtil;
 import com.dpeng.gateway.config.config.Config;
+import com.dpeng.gateway.config.config.NettyConfig;
 import com.dpeng.gateway.core.config.LifeCycle;
-import com.dpeng.gateway.core.netty.handler.NettyHttpServerHandler;
 import com.dpeng.gateway.core.netty.processor.NettyProcessor;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.util.ResourceLeakDetector;
-import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -38,6 +32,7 @@ public class NettyHttpServer implements LifeCycle {
     private ServerBootstrap serverBootstrap;
     private EventLoopGroup eventLoopGroupBoss;
     private EventLoopGroup eventLoopGroupWorker;
+    private TransportEnum transport;
 
     public NettyHttpServer(Config config, NettyProcessor nettyProcessor) {
         this.config = config;
@@ -46,21 +41,27 @@ public class NettyHttpServer implements LifeCycle {
     }
 
     /**
-     * 根据不同的操作系统创建选择不同多路复用器,Windows-select(nio), Linux-epoll
+     * 根据配置和操作系统选择不同多路复用器, 依次尝试 io_uring、epoll, 最后回退到 nio
      */
     private void init() {
         this.serverBootstrap = new ServerBootstrap();
-        if (SystemUtil.useEpoll()) {
-            this.eventLoopGroupBoss = new EpollEventLoopGroup(config.getNetty().getEventLoopGroupBossNum(),
-                    new DefaultThreadFactory("epoll-netty-boss-nio"));
-            this.eventLoopGroupWorker = new EpollEventLoopGroup(config.getNetty().getEventLoopGroupWorkerNum(),
-                    new DefaultThreadFactory("epoll-netty-worker-nio"));
-        } else {
-            this.eventLoopGroupBoss = new NioEventLoopGroup(config.getNetty().getEventLoopGroupBossNum(),
-                    new DefaultThreadFactory("default-netty-boss-nio"));
-            this.eventLoopGroupWorker = new NioEventLoopGroup(config.getNetty().getEventLoopGroupWorkerNum(),
-                    new DefaultThreadFactory("default-netty-worker-nio"));
+        this.transport = TransportUtil.resolve(config.getNetty().getTransport());
+        if (transport != config.getNetty().getTransport() && config.getNetty().getTransport() != TransportEnum.AUTO) {
+            log.warn("transport {} unavailable, fall back to {}", config.getNetty().getTransport(), transport);
+        }
+        if (!isReusePort()) { // SO_REUSEPORT 模式下由 worker 线程直接 accept, 不需要 boss 线程
+            if (config.getNetty().isReusePort()) {
+                log.warn("SO_REUSEPORT requires epoll transport, fall back to single acceptor");
+            }
+            this.eventLoopGroupBoss = TransportUtil.newEventLoopGroup(transport,
+                    config.getNetty().getEventLoopGroupBossNum(), "netty-boss-nio");
         }
+        this.eventLoopGroupWorker = TransportUtil.newEventLoopGroup(transport,
+                config.getNetty().getEventLoopGroupWorkerNum(), "netty-worker-nio");
+    }
+
+    private boolean isReusePort() {
+        return config.getNetty().isReusePort() && transport == TransportEnum.EPOLL;
     }
 
     // 检测是否使用Epoll优化性能
@@ -71,8 +72,7 @@ public class NettyHttpServer implements LifeCycle {
         if (!start.compareAndSet(false, true)) return;
         // 配置服务器参数，如端口、TCP参数等
         serverBootstrap
-                .group(eventLoopGroupBoss, eventLoopGroupWorker)
-                .channel(SystemUtil.useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .channel(TransportUtil.serverChannelClass(transport))
                 .option(ChannelOption.SO_BACKLOG, 1024)            // TCP连接的最大队列长度
                 .option(ChannelOption.SO_REUSEADDR, true)          // 允许端口重用
                 .option(ChannelOption.SO_KEEPALIVE, true)          // 保持连接检测
@@ -80,20 +80,50 @@ public class NettyHttpServer implements LifeCycle {
                 .childOption(ChannelOption.SO_SNDBUF, 65535)       // 设置发送缓冲区大小
                 .childOption(ChannelOption.SO_RCVBUF, 65535)       // 设置接收缓冲区大小
                 .localAddress(new InetSocketAddress(config.getPort())) // 绑定监听端口
-                .childHandler(new ChannelInitializer<>() {   // 定义处理新连接的管道初始化逻辑
-                    @Override
-                    protected void initChannel(Channel ch) throws Exception {
-                        ch.pipeline().addLast(
-                                new HttpServerCodec(), // 处理HTTP请求的编解码器
-                                new HttpObjectAggregator(config.getNetty().getMaxContentLength()), // 聚合HTTP请求
-                                new HttpServerExpectContinueHandler(), // 处理HTTP 100 Continue请求
-                                new NettyHttpServerHandler(nettyProcessor) // 自定义的处理器
-                        );
-                    }
-                });
-        serverBootstrap.bind().sync();
+                .childHandler(new NettyHttpServerInitializer(config.getNetty(), nettyProcessor)); // 定义处理新连接的管道初始化逻辑
+        configureEpollOptions();
+        int acceptorNum = 0;
+        if (isReusePort()) {
+            // SO_REUSEPORT 模式下每个 worker 线程绑定一个监听 socket, 并且同时作为 parent 和 child,
+            // 内核分发到该 socket 的连接直接在 accept 它的线程上处理, 不再经过 childGroup.next() 轮询转交
+            for (EventExecutor executor : eventLoopGroupWorker) {
+                EventLoop eventLoop = (EventLoop) executor;
+                serverBootstrap.clone().group(eventLoop, eventLoop).bind().sync();
+                acceptorNum++;
+            }
+        } else {
+            serverBootstrap.group(eventLoopGroupBoss, eventLoopGroupWorker).bind().sync();
+            acceptorNum = 1;
+        }
         ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.ADVANCED);
-        log.info("gateway startup on port {}", this.config.getPort());
+        log.info("gateway startup on port {}, acceptor num {}", this.config.getPort(), acceptorNum);
+    }
+
+    /**
+     * epoll 特有的监听 socket 参数
+     */
+    private void configureEpollOptions() {
+        if (transport != TransportEnum.EPOLL) {
+            return;
+        }
+        NettyConfig nettyConfig = config.getNetty();
+        if (nettyConfig.isReusePort()) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (nettyConfig.getTcpFastOpen() > 0) {
+            serverBootstrap.option(EpollChannelOption.TCP_FASTOPEN, nettyConfig.getTcpFastOpen());
+        }
+        if (nettyConfig.getTcpDeferAccept() > 0) {
+            serverBootstrap.option(EpollChannelOption.TCP_DEFER_ACCEPT, nettyConfig.getTcpDeferAccept());
+        }
+    }
+
+    public EventLoopGroup getEventLoopGroupWorker() {
+        return eventLoopGroupWorker;
+    }
+
+    public TransportEnum getTransport() {
+        return transport;
     }
 
     @Override
@@ -0,0 +1,100 @@
+package com.dpeng.gateway.core.netty;
+
+import com.dpeng.gateway.config.config.NettyConfig;
+import com.dpeng.gateway.core.netty.handler.NettyHttpServerHandler;
+import com.dpeng.gateway.core.netty.handler.RouteAwareHttpObjectAggregator;
+import com.dpeng.gateway.core.netty.processor.NettyProcessor;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.*;
+import io.netty.util.AsciiString;
+
+/**
+ * 客户端连接的管道初始化。
+ * 开启 HTTP/2 时同一端口同时支持 h2c 升级、prior-knowledge 和普通 HTTP/1.1:
+ * HTTP/2 连接上的每个流是一个子 channel, 经 Http2StreamFrameToHttpObjectCodec 转成 HTTP/1.1 对象后复用原有的处理器,
+ * 每个流对应一个 GatewayContext 并执行同样的过滤器链。
+ */
+public class NettyHttpServerInitializer extends ChannelInitializer<Channel> {
+
+    private final NettyConfig nettyConfig;
+
+    private final NettyProcessor nettyProcessor;
+
+    public NettyHttpServerInitializer(NettyConfig nettyConfig, NettyProcessor nettyProcessor) {
+        this.nettyConfig = nettyConfig;
+        this.nettyProcessor = nettyProcessor;
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        if (nettyConfig.isHttp2Enabled()) {
+            configureHttp2(ch.pipeline());
+        } else {
+            ch.pipeline().addLast(new HttpServerCodec()); // 处理HTTP请求的编解码器
+            addHttpHandlers(ch.pipeline());
+        }
+    }
+
+    /**
+     * HTTP/1.1 连接和 HTTP/2 流共用的处理器
+     */
+    private void addHttpHandlers(ChannelPipeline pipeline) {
+        pipeline.addLast(
+                new RouteAwareHttpObjectAggregator(nettyConfig.getMaxContentLength()), // 聚合HTTP请求, 流式转发的路由不聚合
+                new HttpServerExpectContinueHandler(), // 处理HTTP 100 Continue请求
+                new NettyHttpServerHandler(nettyProcessor) // 自定义的处理器
+        );
+    }
+
+    private void configureHttp2(ChannelPipeline pipeline) {
+        HttpServerCodec sourceCodec = new HttpServerCodec();
+        HttpServerUpgradeHandler.UpgradeCodecFactory upgradeCodecFactory = protocol -> {
+            if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                return new Http2ServerUpgradeCodec(buildFrameCodec(), buildMultiplexHandler());
+            }
+            return null;
+        };
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, upgradeCodecFactory,
+                nettyConfig.getMaxContentLength());
+        // prior-knowledge 连接直接替换为 HTTP/2 处理器
+        ChannelHandler priorKnowledgeHandler = new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(buildFrameCodec(), buildMultiplexHandler());
+            }
+        };
+        pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledgeHandler));
+        // 没有升级的连接收到第一个 HTTP/1.1 请求时再装配原有的处理器
+        pipeline.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                if (msg instanceof HttpMessage) {
+                    addHttpHandlers(ctx.pipeline());
+                    ctx.pipeline().remove(this);
+                }
+                ctx.fireChannelRead(msg);
+            }
+        });
+    }
+
+    private Http2FrameCodec buildFrameCodec() {
+        return Http2FrameCodecBuilder.forServer()
+                .initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(nettyConfig.getHttp2MaxConcurrentStreams()))
+                .build();
+    }
+
+    private Http2MultiplexHandler buildMultiplexHandler() {
+        return new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+            @Override
+            protected void initChannel(Http2StreamChannel ch) {
+                ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                addHttpHandlers(ch.pipeline());
+            }
+        });
+    }
+
+}
@@ -1,9 +1,19 @@
 package com.dpeng.gateway.core.netty.handler;
 
 import com.dpeng.gateway.core.netty.processor.NettyProcessor;
+import com.dpeng.gateway.core.request.StreamingRequestBody;
+import com.dpeng.gateway.core.response.StreamingResponseHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.channels.ClosedChannelException;
+
+import static com.dpeng.gateway.core.helper.ContextHelper.STREAMING_BODY;
+import static com.dpeng.gateway.core.helper.ContextHelper.STREAMING_RESPONSE;
 
 public class NettyHttpServerHandler extends ChannelInboundHandlerAdapter {
     private final NettyProcessor nettyProcessor;
@@ -14,7 +24,42 @@ public class NettyHttpServerHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        nettyProcessor.process(ctx, (FullHttpRequest) msg);
+        if (msg instanceof FullHttpRequest request) {
+            nettyProcessor.process(ctx, request);
+        } else if (msg instanceof HttpRequest request) { // 流式转发的路由不聚合请求体
+            nettyProcessor.processStreaming(ctx, request);
+        } else if (msg instanceof HttpContent content) {
+            nettyProcessor.processContent(ctx, content);
+        } else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 客户端在上传过程中断开, 中止流式请求体, 下游请求随之失败
+        StreamingRequestBody streamingBody = ctx.channel().attr(STREAMING_BODY).getAndSet(null);
+        if (streamingBody != null) {
+            streamingBody.abort(new ClosedChannelException());
+        }
+        // 客户端在下载过程中断开, 关闭下游连接, 不再继续读取响应体
+        StreamingResponseHandler streamingResponse = ctx.channel().attr(STREAMING_RESPONSE).getAndSet(null);
+        if (streamingResponse != null) {
+            streamingResponse.onClientClosed();
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 客户端写缓冲区降到低水位以下, 恢复读取流式响应的下游连接
+        if (ctx.channel().isWritable()) {
+            StreamingResponseHandler streamingResponse = ctx.channel().attr(STREAMING_RESPONSE).get();
+            if (streamingResponse != null) {
+                streamingResponse.onClientWritable();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
     }
 
     @Override
@@ -23,4 +68,4 @@ public class NettyHttpServerHandler extends ChannelInboundHandlerAdapter {
         super.exceptionCaught(ctx, cause);
     }
 
-}
\ No newline at end of file
+}
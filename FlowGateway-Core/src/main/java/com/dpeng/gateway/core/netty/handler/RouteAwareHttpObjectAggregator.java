@@ -0,0 +1,71 @@
+package com.dpeng.gateway.core.netty.handler;
+
+import com.dpeng.gateway.common.exception.NotFoundException;
+import com.dpeng.gateway.config.helper.RouteResolver;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.core.helper.MetricsHelper;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+
+import static com.dpeng.gateway.core.helper.ContextHelper.MATCHED_ROUTE;
+
+/**
+ * 按路由决定是否聚合请求体: 开启了请求流式转发的路由直接透传 HttpRequest 和后续的 HttpContent,
+ * 其余请求仍聚合为 FullHttpRequest。请求头到达时匹配一次路由, 结果放到 channel 属性中供后续处理复用。
+ */
+public class RouteAwareHttpObjectAggregator extends HttpObjectAggregator {
+
+    /**
+     * 当前请求是否流式转发, 每个连接一个聚合器实例, 只在连接的事件循环中访问
+     */
+    private boolean streaming;
+
+    /**
+     * 当前请求的请求头到达时间 (System.nanoTime), 用于统计请求解码耗时和端到端耗时
+     */
+    private long requestStartNanos;
+
+    public RouteAwareHttpObjectAggregator(int maxContentLength) {
+        super(maxContentLength);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest request && !(msg instanceof FullHttpRequest)) {
+            requestStartNanos = System.nanoTime();
+            RouteDefinition route = matchRoute(request);
+            MetricsHelper.ROUTE_MATCH.record(System.nanoTime() - requestStartNanos);
+            ctx.channel().attr(MATCHED_ROUTE).set(route);
+            streaming = route != null && route.getStreaming().isRequestEnabled() && hasBody(request);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    public long getRequestStartNanos() {
+        return requestStartNanos;
+    }
+
+    @Override
+    public boolean acceptInboundMessage(Object msg) throws Exception {
+        if (!streaming) {
+            return super.acceptInboundMessage(msg);
+        }
+        if (msg instanceof LastHttpContent) {
+            streaming = false;
+        }
+        return false;
+    }
+
+    private RouteDefinition matchRoute(HttpRequest request) {
+        try {
+            return RouteResolver.matchingRoute(request);
+        } catch (NotFoundException e) {
+            return null; // 交给后续处理统一返回 404
+        }
+    }
+
+    private boolean hasBody(HttpRequest request) {
+        return HttpUtil.isTransferEncodingChunked(request) || HttpUtil.getContentLength(request, 0L) > 0;
+    }
+
+}
@@ -3,25 +3,36 @@ package com.dpeng.gateway.core.netty.processor;
 
 import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.common.exception.GatewayException;
+import com.dpeng.gateway.config.helper.RouteResolver;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.FilterChainFactory;
 import com.dpeng.gateway.core.helper.ContextHelper;
+import com.dpeng.gateway.core.helper.MetricsHelper;
 import com.dpeng.gateway.core.helper.ResponseHelper;
+import com.dpeng.gateway.core.netty.handler.RouteAwareHttpObjectAggregator;
+import com.dpeng.gateway.core.request.StreamingRequestBody;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.*;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import static com.dpeng.gateway.core.helper.ContextHelper.MATCHED_ROUTE;
+import static com.dpeng.gateway.core.helper.ContextHelper.STREAMING_BODY;
+
 
 @Slf4j
 public class NettyCoreProcessor implements NettyProcessor {
 
     @Override
     public void process(ChannelHandlerContext ctx, FullHttpRequest request) {
+        GatewayContext gatewayContext = null;
         try {
-            GatewayContext gatewayContext = ContextHelper.buildGatewayContext(request, ctx);
+            long decoded = System.nanoTime();
+            gatewayContext = ContextHelper.buildGatewayContext(request, ctx);
+            gatewayContext.setRequestStartNanos(requestStartNanos(ctx, decoded));
+            MetricsHelper.DECODE.record(decoded - gatewayContext.getRequestStartNanos());
             FilterChainFactory.buildFilterChain(gatewayContext);
 
             gatewayContext.doFilter();
@@ -29,18 +40,87 @@ public class NettyCoreProcessor implements NettyProcessor {
         } catch (GatewayException e) {
             log.error("处理错误 {} {}", e.getCode(), e.getCode().getMessage());
             FullHttpResponse httpResponse = ResponseHelper.buildHttpResponse(e.getCode());
+            releaseBody(gatewayContext);
             doWriteAndRelease(ctx, request, httpResponse);
         } catch (Throwable t) {
             log.error("处理未知错误", t);
             FullHttpResponse httpResponse = ResponseHelper.buildHttpResponse(ResponseCode.INTERNAL_ERROR);
+            releaseBody(gatewayContext);
             doWriteAndRelease(ctx, request, httpResponse);
         }
     }
 
-    private void doWriteAndRelease(ChannelHandlerContext ctx, FullHttpRequest request, FullHttpResponse httpResponse) {
+    @Override
+    public void processStreaming(ChannelHandlerContext ctx, HttpRequest request) {
+        StreamingRequestBody streamingBody = null;
+        try {
+            RouteDefinition route = ctx.channel().attr(MATCHED_ROUTE).getAndSet(null);
+            if (route == null) {
+                route = RouteResolver.matchingRoute(request);
+            }
+            streamingBody = new StreamingRequestBody(ctx.channel(),
+                    HttpUtil.getContentLength(request, -1L), route.getStreaming());
+            ctx.channel().attr(STREAMING_BODY).set(streamingBody);
+
+            GatewayContext gatewayContext = ContextHelper.buildGatewayContext(request, streamingBody, route, ctx);
+            gatewayContext.setRequestStartNanos(requestStartNanos(ctx, System.nanoTime()));
+            FilterChainFactory.buildFilterChain(gatewayContext);
+
+            gatewayContext.doFilter();
+
+        } catch (GatewayException e) {
+            log.error("处理错误 {} {}", e.getCode(), e.getCode().getMessage());
+            abortStreaming(ctx, streamingBody, e);
+            doWriteAndRelease(ctx, request, ResponseHelper.buildHttpResponse(e.getCode()));
+        } catch (Throwable t) {
+            log.error("处理未知错误", t);
+            abortStreaming(ctx, streamingBody, t);
+            doWriteAndRelease(ctx, request, ResponseHelper.buildHttpResponse(ResponseCode.INTERNAL_ERROR));
+        }
+    }
+
+    @Override
+    public void processContent(ChannelHandlerContext ctx, HttpContent content) {
+        StreamingRequestBody streamingBody = content instanceof LastHttpContent
+                ? ctx.channel().attr(STREAMING_BODY).getAndSet(null)
+                : ctx.channel().attr(STREAMING_BODY).get();
+        if (streamingBody == null) { // 请求已经失败或被中止, 剩余的请求体直接丢弃
+            content.release();
+            return;
+        }
+        streamingBody.offer(content);
+    }
+
+    /**
+     * 请求头到达的时间, 由聚合器记录, 没有聚合器时使用 now
+     */
+    private long requestStartNanos(ChannelHandlerContext ctx, long now) {
+        RouteAwareHttpObjectAggregator aggregator = ctx.pipeline().get(RouteAwareHttpObjectAggregator.class);
+        return aggregator == null || aggregator.getRequestStartNanos() == 0 ? now : aggregator.getRequestStartNanos();
+    }
+
+    private void abortStreaming(ChannelHandlerContext ctx, StreamingRequestBody streamingBody, Throwable cause) {
+        if (streamingBody != null) {
+            ctx.channel().attr(STREAMING_BODY).compareAndSet(streamingBody, null);
+            streamingBody.abort(cause);
+        }
+    }
+
+    /**
+     * 上下文构建成功后请求体已交给 GatewayRequest 管理
+     */
+    private void releaseBody(GatewayContext gatewayContext) {
+        if (gatewayContext != null) {
+            gatewayContext.getRequest().releaseBody();
+        }
+    }
+
+    private void doWriteAndRelease(ChannelHandlerContext ctx, HttpRequest request, FullHttpResponse httpResponse) {
         ctx.writeAndFlush(httpResponse)
                 .addListener(ChannelFutureListener.CLOSE); // 发送响应后关闭通道
-        ReferenceCountUtil.release(request); // 释放与请求相关联的资源
+        if (ReferenceCountUtil.refCnt(request) > 0) {
+            ReferenceCountUtil.release(request); // 释放与请求相关联的资源, 已交给 GatewayRequest 的请求体不会重复释放
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -3,9 +3,21 @@ package com.dpeng.gateway.core.netty.processor;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
 
 public interface NettyProcessor {
 
     void process(ChannelHandlerContext ctx, FullHttpRequest request);
 
+    /**
+     * 处理流式请求的请求头, 请求体随后通过 processContent 到达
+     */
+    void processStreaming(ChannelHandlerContext ctx, HttpRequest request);
+
+    /**
+     * 处理流式请求的请求体分片
+     */
+    void processContent(ChannelHandlerContext ctx, HttpContent content);
+
 }
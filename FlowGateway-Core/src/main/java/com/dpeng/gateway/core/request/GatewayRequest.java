@@ -3,7 +3,6 @@ package com.dpeng.gateway.core.request;
 import com.alibaba.nacos.common.utils.StringUtils;
 import com.dpeng.gateway.common.constant.HttpConstant;
 import com.dpeng.gateway.config.pojo.ServiceDefinition;
-import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import lombok.Data;
@@ -85,9 +84,19 @@ public class GatewayRequest {
     private final QueryStringDecoder queryStringDecoder;
 
     /**
-     * FullHttpRequest
+     * 原始请求, 聚合模式下是 FullHttpRequest, 流式模式下只有请求头
      */
-    private final FullHttpRequest fullHttpRequest;
+    private final HttpRequest httpRequest;
+
+    /**
+     * 聚合模式下的请求体, 流式请求为空
+     */
+    private final RequestBody requestBody;
+
+    /**
+     * 流式请求体, 只有开启了请求流式转发的路由才有
+     */
+    private final StreamingRequestBody streamingBody;
 
     /**
      * 构建下游请求
@@ -129,7 +138,7 @@ public class GatewayRequest {
      */
     private boolean isGray;
 
-    public GatewayRequest(ServiceDefinition serviceDefinition, Charset charset, String clientIp, String host, String uri, HttpMethod method, String contentType, HttpHeaders headers, FullHttpRequest fullHttpRequest) {
+    public GatewayRequest(ServiceDefinition serviceDefinition, Charset charset, String clientIp, String host, String uri, HttpMethod method, String contentType, HttpHeaders headers, HttpRequest httpRequest, RequestBody requestBody, StreamingRequestBody streamingBody) {
         this.id = LocalDateTime.now().format(DateTimeFormatter.ofPattern(DATE_DEFAULT_FORMATTER)) + "---" + UUID.randomUUID();
         this.serviceDefinition = serviceDefinition;
         this.beginTime = System.currentTimeMillis();
@@ -140,7 +149,9 @@ public class GatewayRequest {
         this.method = method;
         this.contentType = contentType;
         this.headers = headers;
-        this.fullHttpRequest = fullHttpRequest;
+        this.httpRequest = httpRequest;
+        this.requestBody = requestBody;
+        this.streamingBody = streamingBody;
 
         this.queryStringDecoder = new QueryStringDecoder(uri, charset);
         this.path = queryStringDecoder.path();
@@ -153,13 +164,18 @@ public class GatewayRequest {
         this.requestBuilder.setMethod(method.name());
         this.requestBuilder.setHeaders(headers);
         this.requestBuilder.setQueryParams(queryStringDecoder.parameters());
-        ByteBuf contentBuffer = fullHttpRequest.content();
-        if (Objects.nonNull(contentBuffer)) {
-            this.requestBuilder.setBody(contentBuffer.nioBuffer());
-            contentBuffer.release();
+        if (streamingBody != null) {
+            this.requestBuilder.setBody(streamingBody);
         }
     }
 
+    /**
+     * 请求体是否流式转发, 流式请求体只能发送一次
+     */
+    public boolean isStreaming() {
+        return streamingBody != null;
+    }
+
 
     /**
      * 获取Cookie
@@ -173,13 +189,43 @@ public class GatewayRequest {
             }
             Set<io.netty.handler.codec.http.cookie.Cookie> cookies = ServerCookieDecoder.STRICT.decode(cookieStr);
             for (io.netty.handler.codec.http.cookie.Cookie cookie : cookies) {
-                cookieMap.put(name, cookie);
+                cookieMap.put(cookie.name(), cookie);
             }
         }
         return cookieMap.get(name);
     }
 
+    /**
+     * 释放网关持有的聚合模式请求体, 请求处理结束时调用, 多次调用只释放一次, 仍在进行的下游请求结束后才真正释放
+     */
+    public void releaseBody() {
+        if (requestBody != null) {
+            requestBody.release();
+        }
+    }
+
+    /**
+     * 发起一次下游请求前调用, 下游请求结束 (成功或失败) 时调用 {@link #releaseUpstreamBody()}
+     */
+    public void retainUpstreamBody() {
+        if (requestBody != null) {
+            requestBody.retainUpstream();
+        }
+    }
+
+    public void releaseUpstreamBody() {
+        if (requestBody != null) {
+            requestBody.releaseUpstream();
+        }
+    }
+
+    /**
+     * 每次调用构建一个新的下游请求, 重试时请求体使用新的视图重新发送
+     */
     public Request build() {
+        if (requestBody != null && requestBody.length() > 0) {
+            requestBuilder.setBody(requestBody.nioBuffer());
+        }
         return requestBuilder.setUrl(modifyScheme + modifyHost + modifyPath).build();
     }
 
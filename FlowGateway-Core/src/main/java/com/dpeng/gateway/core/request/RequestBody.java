@@ -0,0 +1,77 @@
+package com.dpeng.gateway.core.request;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 聚合模式下的请求体, 持有客户端请求体 ByteBuf 的引用, 以 ByteBuffer 视图交给下游请求直接写出, 不拷贝到堆上。
+ * 同一个请求体在重试时重复使用。网关和每次下游请求各持有一个引用: 网关的引用在请求处理结束时 (写回响应或处理失败) 释放且只释放一次,
+ * 下游请求的引用在下游请求结束 (成功或失败) 时释放, 超时、降级等提前写回响应的情况下不会在下游仍在写出时释放请求体。
+ */
+public class RequestBody {
+
+    private final ByteBuf content;
+
+    /**
+     * content 的 NIO 视图, 每次发送使用独立的 duplicate, 互不影响读写位置
+     */
+    private final ByteBuffer nioBuffer;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    /**
+     * 接管 content 的引用计数。
+     * 聚合得到的 CompositeByteBuf 有多个分片时没有连续的 NIO 视图, 在堆外合并一次, 避免 nioBuffer() 在堆上拷贝。
+     */
+    public RequestBody(ByteBuf content, ByteBufAllocator allocator) {
+        if (content.nioBufferCount() == 1) {
+            this.content = content;
+        } else {
+            ByteBuf merged = allocator.directBuffer(content.readableBytes());
+            merged.writeBytes(content, content.readerIndex(), content.readableBytes());
+            content.release();
+            this.content = merged;
+        }
+        this.nioBuffer = this.content.nioBuffer();
+    }
+
+    public ByteBuffer nioBuffer() {
+        return nioBuffer.duplicate();
+    }
+
+    public int length() {
+        return nioBuffer.remaining();
+    }
+
+    public ByteBuf content() {
+        return content;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    /**
+     * 释放网关持有的引用, 多次调用只释放一次
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            content.release();
+        }
+    }
+
+    /**
+     * 发起一次下游请求时持有一个引用, 下游请求结束时调用 {@link #releaseUpstream()}
+     */
+    public void retainUpstream() {
+        content.retain();
+    }
+
+    public void releaseUpstream() {
+        content.release();
+    }
+
+}
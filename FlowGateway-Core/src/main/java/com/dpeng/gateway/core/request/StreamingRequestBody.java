@@ -0,0 +1,238 @@
+package com.dpeng.gateway.core.request;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.FeedListener;
+import org.asynchttpclient.request.body.generator.FeedableBodyGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式请求体, 客户端发来的 HttpContent 直接排队交给下游请求写出, 不在网关内聚合完整请求体。
+ * 通过客户端 channel 的 autoRead 做背压: 待写出字节数超过高水位时暂停读取客户端, 低于低水位时恢复。
+ * 请求体只能被消费一次, 因此流式请求不参与重试。
+ * 分片的归属: 在队列中时属于本对象, 被 http 客户端的 IO 线程取出后只由该线程写出和释放;
+ * 客户端事件循环上的中止或丢弃只释放仍在队列中的分片, 不会释放正在写出的分片。
+ */
+public class StreamingRequestBody implements FeedableBodyGenerator, Body {
+
+    /**
+     * 客户端连接
+     */
+    private final Channel inbound;
+
+    /**
+     * 请求体长度, chunked 请求为 -1
+     */
+    private final long contentLength;
+
+    private final int highWaterMark;
+
+    private final int lowWaterMark;
+
+    /**
+     * 等待写给下游的请求体分片
+     */
+    private final Queue<ByteBuf> chunks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 正在写给下游的分片, 已从队列取出, 只在 http 客户端的 IO 线程中访问
+     */
+    private ByteBuf current;
+
+    /**
+     * 等待写给下游的字节数
+     */
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * 是否因背压暂停了读取客户端
+     */
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+
+    /**
+     * 是否已收到最后一个分片
+     */
+    private volatile boolean lastReceived;
+
+    /**
+     * 是否已关闭, 关闭后收到的分片直接释放
+     */
+    private volatile boolean closed;
+
+    /**
+     * 中止原因, 不为空时下游写出会失败
+     */
+    private volatile Throwable abortCause;
+
+    /**
+     * 下游有数据可写时的回调, 由 http 客户端在开始写请求体时设置
+     */
+    private volatile FeedListener listener;
+
+    public StreamingRequestBody(Channel inbound, long contentLength, RouteDefinition.StreamingConfig streamingConfig) {
+        this.inbound = inbound;
+        this.contentLength = contentLength;
+        this.highWaterMark = streamingConfig.getHighWaterMark();
+        this.lowWaterMark = Math.min(streamingConfig.getLowWaterMark(), streamingConfig.getHighWaterMark());
+    }
+
+    /**
+     * 接收客户端的请求体分片, 在客户端 channel 的事件循环中调用, content 的引用计数由本对象接管
+     */
+    public void offer(HttpContent content) {
+        if (closed) {
+            content.release();
+            return;
+        }
+        ByteBuf buf = content.content();
+        if (buf.isReadable()) {
+            pendingBytes.addAndGet(buf.readableBytes());
+            chunks.offer(buf);
+        } else {
+            content.release();
+        }
+        if (content instanceof LastHttpContent) {
+            lastReceived = true;
+        }
+        if (closed) { // 入队的同时被关闭, 兜底释放
+            drain();
+            return;
+        }
+        if (pendingBytes.get() > highWaterMark && paused.compareAndSet(false, true)) {
+            inbound.config().setAutoRead(false);
+        }
+        notifyListener();
+    }
+
+    /**
+     * 中止请求体, 已排队的分片被释放, 下游写出时抛出异常
+     */
+    public void abort(Throwable cause) {
+        abortCause = cause;
+        discard();
+        notifyListener();
+    }
+
+    /**
+     * 丢弃剩余的请求体, 在客户端 channel 的事件循环中调用 (下游已提前响应), 正在写出的分片由 IO 线程释放
+     */
+    public void discard() {
+        closed = true;
+        drain();
+        if (paused.compareAndSet(true, false)) {
+            inbound.config().setAutoRead(true); // 恢复读取, 客户端剩余的请求体会被直接丢弃
+        }
+    }
+
+    public boolean isCompleted() {
+        return lastReceived || closed;
+    }
+
+    @Override
+    public boolean feed(ByteBuffer buffer, boolean isLast) {
+        ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+        offer(isLast ? new DefaultLastHttpContent(buf) : new DefaultHttpContent(buf));
+        return true;
+    }
+
+    @Override
+    public void setListener(FeedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Body createBody() {
+        return this;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * 由 http 客户端的 IO 线程调用, 把排队的分片写入 target
+     */
+    @Override
+    public BodyState transferTo(ByteBuf target) throws IOException {
+        if (abortCause != null) {
+            releaseCurrent();
+            throw new IOException("streaming request body aborted", abortCause);
+        }
+        if (closed) { // 剩余的请求体已被丢弃
+            releaseCurrent();
+            return BodyState.STOP;
+        }
+        // 先读 lastReceived 再判断队列, 保证看到 lastReceived 时所有分片都已入队
+        boolean last = lastReceived;
+        while (target.isWritable()) {
+            // 先从队列取出再拷贝, 取出后的分片不会被客户端事件循环释放
+            if (current == null && (current = chunks.poll()) == null) {
+                break;
+            }
+            int length = Math.min(current.readableBytes(), target.writableBytes());
+            target.writeBytes(current, length);
+            pendingBytes.addAndGet(-length);
+            if (!current.isReadable()) {
+                releaseCurrent();
+            }
+        }
+        resumeIfDrained();
+        if (last && current == null && chunks.isEmpty()) {
+            return BodyState.STOP;
+        }
+        return target.isReadable() ? BodyState.CONTINUE : BodyState.SUSPEND;
+    }
+
+    /**
+     * 由 http 客户端的 IO 线程在请求结束时调用
+     */
+    @Override
+    public void close() {
+        releaseCurrent();
+        discard();
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            pendingBytes.addAndGet(-current.readableBytes());
+            current.release();
+            current = null;
+        }
+    }
+
+    private void drain() {
+        ByteBuf chunk;
+        while ((chunk = chunks.poll()) != null) {
+            pendingBytes.addAndGet(-chunk.readableBytes());
+            chunk.release();
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (pendingBytes.get() <= lowWaterMark && paused.compareAndSet(true, false)) {
+            inbound.config().setAutoRead(true);
+        }
+    }
+
+    private void notifyListener() {
+        FeedListener feedListener = listener;
+        if (feedListener != null) {
+            feedListener.onContentAdded();
+        }
+    }
+
+}
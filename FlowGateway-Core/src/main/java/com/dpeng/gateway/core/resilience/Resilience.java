@@ -4,8 +4,6 @@ import com.dpeng.gateway.common.enums.ResponseCode;
 import com.dpeng.gateway.config.pojo.RouteDefinition;
 import com.dpeng.gateway.core.context.GatewayContext;
 import com.dpeng.gateway.core.filter.route.RouteUtil;
-import com.dpeng.gateway.core.helper.ContextHelper;
-import com.dpeng.gateway.core.helper.ResponseHelper;
 import com.dpeng.gateway.core.resilience.fallback.FallbackHandler;
 import com.dpeng.gateway.core.resilience.fallback.FallbackHandlerManager;
 import io.github.resilience4j.bulkhead.Bulkhead;
@@ -49,7 +47,7 @@ public class Resilience {
                 //重试
                 case RETRY -> {
                     Retry retry = ResilienceFactory.buildRetry(resilienceConfig, serviceName);
-                    if (retry != null) {
+                    if (retry != null && !gatewayContext.getRequest().isStreaming()) { // 流式请求体无法重放, 不重试
                         //用重试机制装饰异步任务, 同时触发重试机制的线程为传入的线程池来调用
                         supplier = Retry.decorateCompletionStage(retry, retryScheduler, supplier);
                     }
@@ -107,9 +105,7 @@ public class Resilience {
         //执行最终请求，如果 Fallback 没有启用，就直接返回错误响应。
         supplier.get().exceptionally(throwable -> {
             if (!resilienceConfig.isFallbackEnabled()) {
-                gatewayContext.setThrowable(throwable);
-                gatewayContext.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.SERVICE_UNAVAILABLE));
-                ContextHelper.writeBackResponse(gatewayContext);
+                gatewayContext.fail(throwable, ResponseCode.SERVICE_UNAVAILABLE); // 切回事件循环写回错误响应
             }
             return null;
         });
@@ -1,21 +1,19 @@
 package com.dpeng.gateway.core.resilience.fallback;
 import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.plugin.GatewayPlugin;
 import com.dpeng.gateway.core.context.GatewayContext;
-import com.dpeng.gateway.core.helper.ContextHelper;
-import com.dpeng.gateway.core.helper.ResponseHelper;
 
 import static com.dpeng.gateway.common.constant.FallbackConstant.DEFAULT_FALLBACK_HANDLER_NAME;
 
 /**
  * 默认的降级处理器
  */
+@GatewayPlugin(value = FallbackHandler.class, name = DEFAULT_FALLBACK_HANDLER_NAME)
 public class DefaultFallbackHandler implements FallbackHandler {
 
     @Override
     public void handle(Throwable throwable, GatewayContext context) {
-        context.setThrowable(throwable);
-        context.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.GATEWAY_FALLBACK));
-        ContextHelper.writeBackResponse(context);
+        context.fail(throwable, ResponseCode.GATEWAY_FALLBACK);
     }
 
     @Override
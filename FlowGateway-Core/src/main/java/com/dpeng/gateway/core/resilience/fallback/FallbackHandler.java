@@ -4,6 +4,9 @@ import com.dpeng.gateway.core.context.GatewayContext;
 
 public interface FallbackHandler {
 
+    /**
+     * 在下游请求失败的线程 (http 客户端或重试调度线程) 中调用, 通过 context.fail 切回事件循环写回响应
+     */
     void handle(Throwable throwable, GatewayContext context);
 
     String mark();
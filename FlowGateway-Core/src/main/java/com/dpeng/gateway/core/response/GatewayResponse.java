@@ -27,6 +27,14 @@ public class GatewayResponse {
      * 响应结果
      */
     private Response response;
+    /**
+     * 流式响应处理器, 不为空时响应体由它边收边写回客户端
+     */
+    private StreamingResponseHandler streamingHandler;
+    /**
+     * 按 Content-Encoding 解压后的下游响应体, 过滤器第一次需要时才解压
+     */
+    private byte[] decodedBody;
 
     /**
      * 设置响应头信息
@@ -35,4 +43,8 @@ public class GatewayResponse {
         responseHeaders.add(key, val);
     }
 
+    public boolean isStreaming() {
+        return streamingHandler != null;
+    }
+
 }
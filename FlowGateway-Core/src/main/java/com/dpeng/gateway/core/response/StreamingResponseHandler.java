@@ -0,0 +1,232 @@
+package com.dpeng.gateway.core.response;
+
+import com.dpeng.gateway.core.context.GatewayContext;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+import lombok.extern.slf4j.Slf4j;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseHeaders;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.handler.ExtendedAsyncHandler;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.dpeng.gateway.core.helper.ContextHelper.STREAMING_RESPONSE;
+
+/**
+ * 流式响应处理器, 收到下游响应头后立即执行后置过滤器并把响应头写回客户端, 响应体分片到达即转发, 不在网关内聚合完整响应体。
+ * 通过下游 channel 的 autoRead 做背压: 客户端不可写时暂停读取下游, 客户端恢复可写后继续读取。
+ * 响应头写回之前到达的分片先缓存, 写回响应头时一并写出。
+ */
+@Slf4j
+public class StreamingResponseHandler extends ExtendedAsyncHandler<Response> {
+
+    private final GatewayContext context;
+
+    private final ChannelHandlerContext nettyCtx;
+
+    /**
+     * 下游连接, 建立连接或从连接池取出时设置
+     */
+    private volatile Channel upstream;
+
+    /**
+     * 是否因客户端不可写暂停了读取下游
+     */
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+
+    private int statusCode;
+
+    /**
+     * 是否已收到下游响应头, 收到之后后置过滤器已执行, 不能再重试或降级
+     */
+    private volatile boolean headersReceived;
+
+    /**
+     * 以下字段由 this 保护
+     */
+    private boolean headWritten;
+
+    private boolean lastReceived;
+
+    private HttpHeaders trailingHeaders;
+
+    private final List<HttpContent> pending = new ArrayList<>();
+
+    public StreamingResponseHandler(GatewayContext context) {
+        this.context = context;
+        this.nettyCtx = context.getNettyCtx();
+    }
+
+    public boolean isHeadersReceived() {
+        return headersReceived;
+    }
+
+    @Override
+    public State onStatusReceived(org.asynchttpclient.HttpResponseStatus responseStatus) {
+        context.setUpstreamFirstByteNanos(System.nanoTime());
+        statusCode = responseStatus.getStatusCode();
+        return State.CONTINUE;
+    }
+
+    @Override
+    public State onHeadersReceived(HttpResponseHeaders headers) {
+        if (headers.isTrailling()) {
+            synchronized (this) {
+                trailingHeaders = headers.getHeaders();
+            }
+            return State.CONTINUE;
+        }
+        headersReceived = true;
+        GatewayResponse gatewayResponse = new GatewayResponse();
+        gatewayResponse.setHttpResponseStatus(HttpResponseStatus.valueOf(statusCode));
+        gatewayResponse.setResponseHeaders(headers.getHeaders());
+        gatewayResponse.setStreamingHandler(this);
+        context.setResponse(gatewayResponse);
+        nettyCtx.channel().attr(STREAMING_RESPONSE).set(this);
+        context.resume(); // 在事件循环中执行后置过滤器, 结束后由 ContextHelper 调用 writeHead
+        return State.CONTINUE;
+    }
+
+    @Override
+    public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+        if (bodyPart.length() > 0) {
+            HttpContent content = new DefaultHttpContent(Unpooled.wrappedBuffer(bodyPart.getBodyByteBuffer()));
+            synchronized (this) {
+                if (headWritten) {
+                    nettyCtx.writeAndFlush(content);
+                } else {
+                    pending.add(content);
+                }
+            }
+        }
+        if (bodyPart.isLast()) {
+            resumeUpstream(); // 最后一个分片之后连接会回到连接池, 不能保持暂停状态
+        } else if (!nettyCtx.channel().isWritable()) {
+            pauseUpstream();
+        }
+        return State.CONTINUE;
+    }
+
+    @Override
+    public Response onCompleted() {
+        resumeUpstream();
+        synchronized (this) {
+            lastReceived = true;
+            if (headWritten) {
+                writeLast();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onThrowable(Throwable t) {
+        if (!headersReceived) {
+            return; // 还没有写回任何内容, 由调用方按普通失败处理
+        }
+        log.error("streaming response aborted: {}", context.getRequest().getPath(), t);
+        synchronized (this) {
+            pending.forEach(HttpContent::release);
+            pending.clear();
+            lastReceived = true;
+        }
+        nettyCtx.channel().attr(STREAMING_RESPONSE).compareAndSet(this, null);
+        context.getRequest().releaseBody();
+        nettyCtx.channel().close(); // 响应头已发出, 只能关闭连接让客户端感知响应不完整
+    }
+
+    @Override
+    public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+        context.setUpstreamConnectedNanos(System.nanoTime());
+        upstream = connection;
+    }
+
+    @Override
+    public void onConnectionPooled(Channel connection) {
+        context.setUpstreamConnectedNanos(System.nanoTime());
+        upstream = connection;
+    }
+
+    /**
+     * 后置过滤器执行完后写回响应头, 并写出期间缓存的分片
+     */
+    public void writeHead() {
+        GatewayResponse gatewayResponse = context.getResponse();
+        HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                gatewayResponse.getHttpResponseStatus(), gatewayResponse.getResponseHeaders());
+        if (!HttpUtil.isContentLengthSet(head) && !HttpUtil.isTransferEncodingChunked(head)) {
+            HttpUtil.setTransferEncodingChunked(head, true);
+        }
+        if (context.isKeepAlive()) {
+            head.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        }
+        synchronized (this) {
+            nettyCtx.write(head);
+            pending.forEach(nettyCtx::write);
+            pending.clear();
+            headWritten = true;
+            if (lastReceived) {
+                writeLast();
+            } else {
+                nettyCtx.flush();
+            }
+        }
+    }
+
+    /**
+     * 客户端恢复可写, 继续读取下游
+     */
+    public void onClientWritable() {
+        resumeUpstream();
+    }
+
+    /**
+     * 客户端已断开, 关闭下游连接, 下游请求随之失败
+     */
+    public void onClientClosed() {
+        Channel channel = upstream;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void writeLast() {
+        LastHttpContent last = trailingHeaders == null ? LastHttpContent.EMPTY_LAST_CONTENT
+                : new DefaultLastHttpContent(Unpooled.EMPTY_BUFFER);
+        if (trailingHeaders != null) {
+            last.trailingHeaders().add(trailingHeaders);
+        }
+        nettyCtx.channel().attr(STREAMING_RESPONSE).compareAndSet(this, null);
+        context.getRequest().releaseBody(); // 下游响应已读完, 请求体不会再被发送
+        ChannelFuture future = nettyCtx.writeAndFlush(last);
+        if (!context.isKeepAlive()) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private void pauseUpstream() {
+        Channel channel = upstream;
+        if (channel != null && paused.compareAndSet(false, true)) {
+            channel.config().setAutoRead(false);
+            if (nettyCtx.channel().isWritable()) { // 暂停期间客户端已恢复可写, 可写事件可能已经错过
+                resumeUpstream();
+            }
+        }
+    }
+
+    private void resumeUpstream() {
+        Channel channel = upstream;
+        if (channel != null && paused.compareAndSet(true, false)) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.dpeng.gateway.core.response;
+
+import com.dpeng.gateway.core.context.GatewayContext;
+import io.netty.channel.Channel;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseHeaders;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.handler.ExtendedAsyncHandler;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 聚合完整响应的处理器, 与 AsyncCompletionHandlerBase 相同, 同时在上下文中记录取得下游连接和收到响应首字节的时间
+ */
+public class TimedResponseHandler extends ExtendedAsyncHandler<Response> {
+
+    private final GatewayContext context;
+
+    private final Response.ResponseBuilder builder = new Response.ResponseBuilder();
+
+    public TimedResponseHandler(GatewayContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public State onStatusReceived(HttpResponseStatus responseStatus) {
+        context.setUpstreamFirstByteNanos(System.nanoTime());
+        builder.reset();
+        builder.accumulate(responseStatus);
+        return State.CONTINUE;
+    }
+
+    @Override
+    public State onHeadersReceived(HttpResponseHeaders headers) {
+        builder.accumulate(headers);
+        return State.CONTINUE;
+    }
+
+    @Override
+    public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+        builder.accumulate(bodyPart);
+        return State.CONTINUE;
+    }
+
+    @Override
+    public Response onCompleted() {
+        return builder.build();
+    }
+
+    @Override
+    public void onThrowable(Throwable t) {
+        // 失败由调用方通过 future 处理
+    }
+
+    @Override
+    public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+        context.setUpstreamConnectedNanos(System.nanoTime());
+    }
+
+    @Override
+    public void onConnectionPooled(Channel connection) {
+        context.setUpstreamConnectedNanos(System.nanoTime());
+    }
+
+}
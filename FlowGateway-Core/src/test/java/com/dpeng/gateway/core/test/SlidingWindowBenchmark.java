@@ -0,0 +1,93 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.exception.LimitedException;
+import com.dpeng.gateway.core.algorithm.SlidingWindowRateLimiter;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.filter.flow.RateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比滑动窗口限流器在多线程下的放行吞吐: 环形时间片计数 (RING) 与原来加锁、按请求记录时间戳的实现 (LINKED_LIST)。
+ * 容量 100k/窗口时大部分请求被拒绝, 吞吐主要取决于构造 LimitedException; 容量不限时全部放行, 对比放行路径本身。
+ * 可以加 -prof gc 观察每次调用的分配。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SlidingWindowBenchmark {
+
+    private static final int WINDOW_MILLIS = 100;
+
+    @Param({"RING", "LINKED_LIST"})
+    public String implementation;
+
+    @Param({"100000", "2147483647"})
+    public int capacity;
+
+    private RateLimiter limiter;
+
+    @Setup
+    public void setup() {
+        limiter = "RING".equals(implementation)
+                ? new SlidingWindowRateLimiter(capacity, WINDOW_MILLIS)
+                : new LinkedListSlidingWindowRateLimiter(capacity, WINDOW_MILLIS);
+    }
+
+    @Benchmark
+    public boolean tryConsume() {
+        try {
+            return limiter.tryConsume(null) == FilterResult.CONTINUE;
+        } catch (LimitedException e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SlidingWindowBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * 原来的实现, 作为对比基准
+     */
+    private static class LinkedListSlidingWindowRateLimiter implements RateLimiter {
+
+        private final int capacity;
+
+        private final int windowSizeInMillis;
+
+        private final Deque<Long> requestTimestamps = new LinkedList<>();
+
+        private LinkedListSlidingWindowRateLimiter(int capacity, int windowSizeInMillis) {
+            this.capacity = capacity;
+            this.windowSizeInMillis = windowSizeInMillis;
+        }
+
+        @Override
+        public synchronized FilterResult tryConsume(GatewayContext context) {
+            long now = System.currentTimeMillis();
+            while (!requestTimestamps.isEmpty() && (now - requestTimestamps.peekFirst()) > windowSizeInMillis) {
+                requestTimestamps.pollFirst();
+            }
+            if (requestTimestamps.size() < capacity) {
+                requestTimestamps.addLast(now);
+                return FilterResult.CONTINUE;
+            }
+            throw new LimitedException(ResponseCode.TOO_MANY_REQUESTS);
+        }
+
+    }
+
+}
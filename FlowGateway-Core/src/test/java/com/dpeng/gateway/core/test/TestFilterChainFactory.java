@@ -0,0 +1,265 @@
+package com.dpeng.gateway.core.test;
+
+import cn.hutool.json.JSONUtil;
+import com.dpeng.gateway.common.enums.FlowKeyEnum;
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.metrics.Histogram;
+import com.dpeng.gateway.common.metrics.MetricRegistry;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.config.pojo.ServiceDefinition;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.*;
+import com.dpeng.gateway.core.filter.flow.FlowFilter;
+import com.dpeng.gateway.core.filter.gray.GrayFilter;
+import com.dpeng.gateway.core.helper.MetricsHelper;
+import com.dpeng.gateway.core.helper.RequestHelper;
+import com.dpeng.gateway.core.helper.ResponseHelper;
+import com.dpeng.gateway.core.resilience.fallback.DefaultFallbackHandler;
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.dpeng.gateway.common.constant.FilterConstant.FLOW_FILTER_NAME;
+import static com.dpeng.gateway.common.constant.FilterConstant.GRAY_FILTER_NAME;
+import static org.junit.Assert.*;
+
+public class TestFilterChainFactory {
+
+    private static RouteDefinition route(String id, boolean flowEnabled) {
+        RouteDefinition route = new RouteDefinition();
+        route.setId(id);
+        route.setServiceName("user-service");
+        route.setUri("/user/**");
+        RouteDefinition.FlowFilterConfig flowFilterConfig = new RouteDefinition.FlowFilterConfig();
+        flowFilterConfig.setEnabled(flowEnabled);
+        RouteDefinition.FilterConfig filterConfig = new RouteDefinition.FilterConfig();
+        filterConfig.setName(FLOW_FILTER_NAME);
+        filterConfig.setConfig(JSONUtil.toJsonStr(flowFilterConfig));
+        route.getFilterConfigs().add(filterConfig);
+        return route;
+    }
+
+    @Test
+    public void testCompileFilter() {
+        // 配置在编译时解析, 不生效的过滤器不加入过滤器链
+        assertNull(new FlowFilter().compile(route("flow-off", false)));
+        Filter flowFilter = new FlowFilter().compile(route("flow-on", true));
+        assertNotNull(flowFilter);
+        assertNotSame(flowFilter, new FlowFilter().compile(route("flow-on", true)));
+
+        RouteDefinition grayOff = route("gray-off", false);
+        RouteDefinition.FilterConfig grayConfig = new RouteDefinition.FilterConfig();
+        grayConfig.setName(GRAY_FILTER_NAME);
+        grayConfig.setEnable(false);
+        grayOff.getFilterConfigs().add(grayConfig);
+        assertNull(new GrayFilter().compile(grayOff));
+        assertNotNull(new GrayFilter().compile(route("gray-default", false)));
+    }
+
+    @Test
+    public void testInvalidFlowKeyName() {
+        for (FlowKeyEnum keyType : List.of(FlowKeyEnum.PATH_SEGMENT, FlowKeyEnum.HEADER, FlowKeyEnum.COOKIE)) {
+            for (String keyName : new String[]{null, "abc", "-1"}) {
+                if (keyType != FlowKeyEnum.PATH_SEGMENT && "abc".equals(keyName)) {
+                    continue;
+                }
+                RouteDefinition.FlowFilterConfig flowFilterConfig = new RouteDefinition.FlowFilterConfig();
+                flowFilterConfig.setEnabled(true);
+                flowFilterConfig.setKeyType(keyType);
+                flowFilterConfig.setKeyName(keyName);
+                RouteDefinition route = route("flow-key-" + keyType, true);
+                route.getFilterConfigs().iterator().next().setConfig(JSONUtil.toJsonStr(flowFilterConfig));
+                // keyName 不合法时只关闭按键限流, 不影响过滤器链的编译
+                assertNotNull(new FlowFilter().compile(route));
+            }
+        }
+    }
+
+    @Test
+    public void testRecompileOnlyWhenRouteChanged() {
+        RouteDefinition route = route("chain-route", true);
+        FilterChain chain = FilterChainFactory.getFilterChain(route);
+        assertSame(chain, FilterChainFactory.getFilterChain(route));
+        // 配置推送中内容未变的路由是新对象, 继续使用原来的过滤器链
+        assertSame(chain, FilterChainFactory.getFilterChain(route("chain-route", true)));
+        // 路由定义变化后重新编译
+        assertNotSame(chain, FilterChainFactory.getFilterChain(route("chain-route", false)));
+    }
+
+    @Test
+    public void testExecuteChain() {
+        List<String> trace = new ArrayList<>();
+        List<Filter> filters = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) { // 过滤器很多时调用栈也不会加深
+            filters.add(new TestFilter(i, context -> FilterResult.CONTINUE));
+        }
+        filters.add(new TestFilter(20000, context -> { // 返回 SUSPEND 之前异步操作就已完成
+            trace.add("suspend");
+            context.resume();
+            return FilterResult.SUSPEND;
+        }));
+        filters.add(new TestFilter(30000, context -> {
+            trace.add("route");
+            context.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.SUCCESS));
+            return FilterResult.COMPLETE;
+        }));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user");
+        request.headers().set("X-Forwarded-For", "127.0.0.1");
+        GatewayContext context = new GatewayContext(ctx, RequestHelper.buildGatewayRequest(new ServiceDefinition("user-service"), request, ctx),
+                route("execute-route", false), true);
+        context.setFilterChain(new FilterChain(filters));
+        context.setRequestStartNanos(System.nanoTime());
+        MetricRegistry metrics = MetricRegistry.getInstance();
+        long filterCount = metrics.histogram("filter.pre.nanos.test-20000").getCount();
+        long writeCount = MetricsHelper.WRITE.getCount();
+        context.doFilter();
+
+        assertEquals(List.of("suspend", "route"), trace);
+        FullHttpResponse response = channel.readOutbound();
+        assertNotNull(response);
+        response.release();
+        // 每个过滤器、写回阶段和路由的耗时都被记录
+        assertEquals(filterCount + 1, metrics.histogram("filter.pre.nanos.test-20000").getCount());
+        assertEquals(writeCount + 1, MetricsHelper.WRITE.getCount());
+        assertEquals(1, MetricsHelper.routeLatency("execute-route").getCount());
+        // 路由删除后它的指标一起移除
+        MetricsHelper.removeRouteMetrics("execute-route");
+        assertFalse(metrics.getHistograms().containsKey("route.latency.nanos.execute-route"));
+    }
+
+    @Test
+    public void testBlockingFilter() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        Channel channel = new NioSocketChannel();
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter());
+        group.register(channel).sync();
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+
+        List<Boolean> inEventLoop = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Filter> filters = List.of(
+                new TestFilter(1, context -> {
+                    inEventLoop.add(channel.eventLoop().inEventLoop());
+                    return FilterResult.CONTINUE;
+                }) {
+                    @Override
+                    public boolean isBlocking() {
+                        return true;
+                    }
+                },
+                new TestFilter(2, context -> {
+                    inEventLoop.add(channel.eventLoop().inEventLoop());
+                    context.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.SUCCESS));
+                    done.countDown();
+                    return FilterResult.COMPLETE;
+                }));
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user");
+        request.headers().set("X-Forwarded-For", "127.0.0.1");
+        GatewayContext context = new GatewayContext(ctx, RequestHelper.buildGatewayRequest(new ServiceDefinition("user-service"), request, ctx),
+                route("blocking-route", false), true);
+        FilterChain chain = new FilterChain(filters);
+        context.setFilterChain(chain);
+        long queued = MetricRegistry.getInstance().histogram("filter.blocking.queue.nanos.test-1").getCount();
+        // 排队时间直方图在构建过滤器链时取好, 只有阻塞过滤器有
+        assertSame(MetricRegistry.getInstance().histogram("filter.blocking.queue.nanos.test-1"), chain.getQueueLatency(0));
+        assertNull(chain.getQueueLatency(1));
+        channel.eventLoop().execute(context::doFilter);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // 阻塞过滤器不在事件循环中执行, 之后的过滤器切回事件循环
+        assertEquals(List.of(false, true), inEventLoop);
+        // 前置和后置过滤都经过阻塞执行器
+        Histogram queueTime = MetricRegistry.getInstance().histogram("filter.blocking.queue.nanos.test-1");
+        for (int i = 0; i < 50 && queueTime.getCount() < queued + 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(queued + 2, queueTime.getCount());
+        channel.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFallbackWrittenOnEventLoop() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        Channel channel = new NioSocketChannel();
+        List<Boolean> inEventLoop = new CopyOnWriteArrayList<>();
+        List<HttpResponseStatus> statuses = new CopyOnWriteArrayList<>();
+        CountDownLatch written = new CountDownLatch(1);
+        channel.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                inEventLoop.add(ctx.channel().eventLoop().inEventLoop());
+                statuses.add(((HttpResponse) msg).status());
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+                written.countDown();
+            }
+        });
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter());
+        group.register(channel).sync();
+        ChannelHandlerContext ctx = channel.pipeline().lastContext();
+
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user");
+        request.headers().set("X-Forwarded-For", "127.0.0.1");
+        GatewayContext context = new GatewayContext(ctx, RequestHelper.buildGatewayRequest(new ServiceDefinition("user-service"), request, ctx),
+                route("fallback-route", false), true);
+        context.setFilterChain(new FilterChain(List.of(new TestFilter(1, c -> FilterResult.SUSPEND))));
+        channel.eventLoop().submit(context::doFilter).sync();
+
+        // 下游请求在 http 客户端线程中失败, 降级响应切回事件循环写回
+        new DefaultFallbackHandler().handle(new IllegalStateException("upstream failed"), context);
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(true), inEventLoop);
+        assertEquals(List.of(HttpResponseStatus.GATEWAY_TIMEOUT), statuses);
+        channel.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private static class TestFilter implements Filter {
+
+        private final int order;
+
+        private final Function<GatewayContext, FilterResult> pre;
+
+        private TestFilter(int order, Function<GatewayContext, FilterResult> pre) {
+            this.order = order;
+            this.pre = pre;
+        }
+
+        @Override
+        public FilterResult doPreFilter(GatewayContext context) {
+            return pre.apply(context);
+        }
+
+        @Override
+        public FilterResult doPostFilter(GatewayContext context) {
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public String mark() {
+            return "test-" + order;
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+
+    }
+
+}
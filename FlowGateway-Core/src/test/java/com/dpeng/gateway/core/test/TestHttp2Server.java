@@ -0,0 +1,86 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.config.config.NettyConfig;
+import com.dpeng.gateway.core.netty.NettyHttpServerInitializer;
+import com.dpeng.gateway.core.netty.processor.NettyProcessor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.*;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestHttp2Server {
+
+    private final List<String> received = new ArrayList<>();
+
+    private EmbeddedChannel serverChannel() {
+        NettyConfig nettyConfig = new NettyConfig();
+        nettyConfig.setHttp2Enabled(true);
+        return new EmbeddedChannel(new NettyHttpServerInitializer(nettyConfig, new NettyProcessor() {
+            @Override
+            public void process(ChannelHandlerContext ctx, FullHttpRequest request) {
+                received.add(request.method() + " " + request.uri());
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+                request.release();
+            }
+
+            @Override
+            public void processStreaming(ChannelHandlerContext ctx, HttpRequest request) {
+            }
+
+            @Override
+            public void processContent(ChannelHandlerContext ctx, HttpContent content) {
+                content.release();
+            }
+        }));
+    }
+
+    @Test
+    public void testPriorKnowledge() {
+        EmbeddedChannel client = new EmbeddedChannel(new ChannelOutboundHandlerAdapter());
+        ChannelHandlerContext ctx = client.pipeline().firstContext();
+        DefaultHttp2FrameWriter writer = new DefaultHttp2FrameWriter();
+        client.writeOutbound(Http2CodecUtil.connectionPrefaceBuf());
+        writer.writeSettings(ctx, new Http2Settings(), ctx.newPromise());
+        // EmbeddedChannel 没有父 channel, 会被 Http2MultiplexHandler 当作客户端, 因此避开升级专用的流 1
+        for (int streamId : new int[]{3, 5}) {
+            Http2Headers headers = new DefaultHttp2Headers().method("GET").path("/user/" + streamId)
+                    .scheme("http").authority("localhost");
+            writer.writeHeaders(ctx, streamId, headers, 0, true, ctx.newPromise());
+        }
+        client.flush();
+
+        EmbeddedChannel server = serverChannel();
+        ByteBuf out;
+        while ((out = client.readOutbound()) != null) {
+            server.writeInbound(out);
+        }
+        server.runPendingTasks();
+
+        // 同一个连接上的两个流各自作为一个请求处理
+        assertEquals(List.of("GET /user/3", "GET /user/5"), received);
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testHttp1Fallback() {
+        EmbeddedChannel server = serverChannel();
+        server.writeInbound(Unpooled.copiedBuffer("GET /user/1 HTTP/1.1\r\nHost: localhost\r\n\r\n", CharsetUtil.US_ASCII));
+
+        assertEquals(List.of("GET /user/1"), received);
+        ByteBuf response = server.readOutbound();
+        assertTrue(response.toString(CharsetUtil.US_ASCII).startsWith("HTTP/1.1 200 OK"));
+        response.release();
+        server.finishAndReleaseAll();
+    }
+
+}
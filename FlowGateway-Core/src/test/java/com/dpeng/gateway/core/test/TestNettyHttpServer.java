@@ -0,0 +1,80 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.enums.TransportEnum;
+import com.dpeng.gateway.config.config.Config;
+import com.dpeng.gateway.core.netty.NettyHttpServer;
+import com.dpeng.gateway.core.netty.processor.NettyProcessor;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.epoll.Epoll;
+import io.netty.handler.codec.http.*;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class TestNettyHttpServer {
+
+    @Test
+    public void testReusePortServesOnAcceptingLoop() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+        Config config = new Config();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            config.setPort(socket.getLocalPort());
+        }
+        config.getNetty().setTransport(TransportEnum.EPOLL);
+        config.getNetty().setReusePort(true);
+        config.getNetty().setEventLoopGroupWorkerNum(4);
+
+        Queue<Channel> children = new ConcurrentLinkedQueue<>();
+        NettyHttpServer server = new NettyHttpServer(config, new NettyProcessor() {
+            @Override
+            public void process(ChannelHandlerContext ctx, FullHttpRequest request) {
+                children.add(ctx.channel());
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+                HttpUtil.setContentLength(response, 0);
+                ctx.writeAndFlush(response);
+                request.release();
+            }
+
+            @Override
+            public void processStreaming(ChannelHandlerContext ctx, HttpRequest request) {
+            }
+
+            @Override
+            public void processContent(ChannelHandlerContext ctx, HttpContent content) {
+                content.release();
+            }
+        });
+        server.start();
+        try {
+            for (int i = 0; i < 16; i++) {
+                try (Socket client = new Socket("127.0.0.1", config.getPort())) {
+                    OutputStream out = client.getOutputStream();
+                    out.write("GET /user HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    InputStream in = client.getInputStream();
+                    String status = new String(in.readNBytes(12), StandardCharsets.US_ASCII);
+                    assertEquals("HTTP/1.1 200", status);
+                }
+            }
+        } finally {
+            server.shutdown();
+        }
+
+        // 每个监听 socket 接受的连接都留在 accept 它的线程上处理
+        assertEquals(16, children.size());
+        for (Channel child : children) {
+            assertSame(child.parent().eventLoop(), child.eventLoop());
+        }
+    }
+
+}
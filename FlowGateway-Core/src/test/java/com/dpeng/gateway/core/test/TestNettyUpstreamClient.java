@@ -0,0 +1,234 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.enums.UpstreamProtocolEnum;
+import com.dpeng.gateway.config.config.HttpClientConfig;
+import com.dpeng.gateway.core.helper.ResponseHelper;
+import com.dpeng.gateway.core.http.NettyUpstreamClient;
+import com.dpeng.gateway.core.http.UpstreamConnectionPool;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import org.asynchttpclient.AsyncCompletionHandlerBase;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.uri.Uri;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestNettyUpstreamClient {
+
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private Channel server;
+
+    private NettyUpstreamClient client;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        // 回显请求方法和请求体的下游服务
+        server = bind(new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                connections.incrementAndGet();
+                ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1024), new EchoHandler());
+            }
+        });
+        client = new NettyUpstreamClient(new HttpClientConfig(), group, NioSocketChannel.class);
+    }
+
+    private Channel bind(ChannelInitializer<Channel> initializer) throws InterruptedException {
+        return new ServerBootstrap().group(group).channel(NioServerSocketChannel.class).childHandler(initializer)
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+    }
+
+    private static class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            String body = request.method() + " " + request.uri() + " "
+                    + request.content().toString(StandardCharsets.UTF_8);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK, Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            ctx.writeAndFlush(response);
+        }
+
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + ((InetSocketAddress) server.localAddress()).getPort() + path;
+    }
+
+    @Test
+    public void testRequestAndReuseConnection() throws Exception {
+        EventLoop eventLoop = group.next();
+        Response first = client.execute(new RequestBuilder().setUrl(url("/user?id=1")).build(),
+                new AsyncCompletionHandlerBase(), eventLoop).get(5, TimeUnit.SECONDS);
+        assertEquals(200, first.getStatusCode());
+        assertEquals("GET /user?id=1 ", first.getResponseBody());
+
+        Response second = client.execute(new RequestBuilder("POST").setUrl(url("/user"))
+                        .setBody(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8))).build(),
+                new AsyncCompletionHandlerBase(), eventLoop).get(5, TimeUnit.SECONDS);
+        assertEquals("POST /user hello", second.getResponseBody());
+
+        // 同一个事件循环上复用连接池中的连接
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void testPrewarmAndDrain() throws Exception {
+        EventLoop eventLoop = group.next();
+        int port = ((InetSocketAddress) server.localAddress()).getPort();
+        client.prewarm(Uri.create(url("")), 2, eventLoop);
+        client.prewarm(Uri.create(url("")), 2, eventLoop); // 已有和正在建立的连接计入, 不会重复建立
+        Thread.sleep(300);
+        assertEquals(2, connections.get());
+
+        Response response = client.execute(new RequestBuilder().setUrl(url("/")).build(),
+                new AsyncCompletionHandlerBase(), eventLoop).get(5, TimeUnit.SECONDS);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, connections.get()); // 使用预热的连接
+
+        client.drain("127.0.0.1", port, eventLoop);
+        client.execute(new RequestBuilder().setUrl(url("/")).build(), new AsyncCompletionHandlerBase(), eventLoop)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(3, connections.get()); // 排空后需要新建连接
+    }
+
+    @Test
+    public void testDrainForgottenAfterLastClose() {
+        UpstreamConnectionPool pool = new UpstreamConnectionPool(4, 60_000);
+        EmbeddedChannel idle = new EmbeddedChannel();
+        EmbeddedChannel borrowed = new EmbeddedChannel();
+        pool.track("10.0.0.1:8080", idle);
+        pool.track("10.0.0.1:8080", borrowed);
+        assertTrue(pool.offer("10.0.0.1:8080", idle));
+
+        // 空闲连接立即关闭, 使用中的连接归还时被拒绝
+        pool.drain("10.0.0.1:8080");
+        assertFalse(idle.isOpen());
+        assertTrue(pool.isDraining("10.0.0.1:8080"));
+        assertFalse(pool.offer("10.0.0.1:8080", borrowed));
+
+        // 最后一个连接关闭后不再记录该实例
+        borrowed.close();
+        assertFalse(pool.isDraining("10.0.0.1:8080"));
+        pool.drain("10.0.0.2:8080"); // 没有连接的实例不需要排空
+        assertFalse(pool.isDraining("10.0.0.2:8080"));
+    }
+
+    @Test
+    public void testHttp2Multiplex() throws Exception {
+        AtomicInteger http2Connections = new AtomicInteger();
+        // 只支持 h2c prior knowledge 的下游服务
+        Channel http2Server = bind(new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                http2Connections.incrementAndGet();
+                ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().build(),
+                        new Http2MultiplexHandler(new ChannelInitializer<>() {
+                            @Override
+                            protected void initChannel(Channel stream) {
+                                stream.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true),
+                                        new HttpObjectAggregator(1024), new EchoHandler());
+                            }
+                        }));
+            }
+        });
+        String url = "http://127.0.0.1:" + ((InetSocketAddress) http2Server.localAddress()).getPort() + "/user";
+        EventLoop eventLoop = group.next();
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.execute(new RequestBuilder("POST").setUrl(url)
+                            .setBody(ByteBuffer.wrap(("h2-" + i).getBytes(StandardCharsets.UTF_8))).build(),
+                    new AsyncCompletionHandlerBase(), eventLoop, UpstreamProtocolEnum.H2C));
+        }
+        for (int i = 0; i < 5; i++) {
+            Response response = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(200, response.getStatusCode());
+            assertEquals("POST /user h2-" + i, response.getResponseBody());
+        }
+        // 并发请求复用同一个连接
+        assertEquals(1, http2Connections.get());
+        http2Server.close();
+    }
+
+    @Test
+    public void testHttp2FallbackToHttp1() throws Exception {
+        EventLoop eventLoop = group.next();
+        for (int i = 0; i < 2; i++) {
+            Response response = client.execute(new RequestBuilder().setUrl(url("/fallback")).build(),
+                    new AsyncCompletionHandlerBase(), eventLoop, UpstreamProtocolEnum.H2C).get(5, TimeUnit.SECONDS);
+            assertEquals("GET /fallback ", response.getResponseBody());
+        }
+        // 一次 h2c 尝试, 之后缓存回退结果, 直接复用 http/1.1 连接
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void testCompressionPassThrough() throws Exception {
+        Channel gzipServer = bind(new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(new HttpServerCodec(), new HttpContentCompressor(), new HttpObjectAggregator(1024),
+                        new EchoHandler());
+            }
+        });
+        String url = "http://127.0.0.1:" + ((InetSocketAddress) gzipServer.localAddress()).getPort() + "/gzip";
+        HttpClientConfig config = new HttpClientConfig();
+        config.setCompressionPassThrough(true);
+        NettyUpstreamClient passThroughClient = new NettyUpstreamClient(config, group, NioSocketChannel.class);
+        Response response = passThroughClient.execute(new RequestBuilder().setUrl(url)
+                        .setHeader(HttpHeaderNames.ACCEPT_ENCODING, "gzip").build(),
+                new AsyncCompletionHandlerBase(), null).get(5, TimeUnit.SECONDS);
+        // 响应体保持压缩, 过滤器需要时再解压
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertNotEquals("GET /gzip ", response.getResponseBody());
+        byte[] decoded = ResponseHelper.getDecodedResponseBody(ResponseHelper.buildGatewayResponse(response));
+        assertEquals("GET /gzip ", new String(decoded, StandardCharsets.UTF_8));
+        gzipServer.close();
+    }
+
+    @Test
+    public void testConnectFailure() throws Exception {
+        String url = url("/");
+        server.close().sync();
+        try {
+            client.execute(new RequestBuilder().setUrl(url).build(), new AsyncCompletionHandlerBase(), null)
+                    .get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof java.net.SocketException);
+        }
+    }
+
+}
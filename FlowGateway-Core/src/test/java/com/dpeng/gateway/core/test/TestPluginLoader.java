@@ -0,0 +1,41 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.plugin.PluginLoader;
+import com.dpeng.gateway.core.filter.Filter;
+import com.dpeng.gateway.core.filter.loadbalance.strategy.LoadBalanceStrategy;
+import com.dpeng.gateway.core.filter.loadbalance.strategy.RandomLoadBalanceStrategy;
+import com.dpeng.gateway.core.plugin.CorePluginRegistry;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.dpeng.gateway.common.constant.FilterConstant.*;
+import static com.dpeng.gateway.common.constant.LoadBalanceConstant.ROUND_ROBIN_LOAD_BALANCE_STRATEGY;
+import static org.junit.Assert.*;
+
+public class TestPluginLoader {
+
+    @Test
+    public void testLoadFromRegistry() {
+        Map<String, Filter> filters = PluginLoader.load(Filter.class, CorePluginRegistry.INSTANCE, Filter::mark);
+        assertTrue(filters.keySet().containsAll(
+                List.of(CORS_FILTER_NAME, FLOW_FILTER_NAME, GRAY_FILTER_NAME, LOAD_BALANCE_FILTER_NAME, ROUTE_FILTER_NAME)));
+        filters.forEach((name, filter) -> assertEquals(name, filter.mark()));
+
+        Map<String, LoadBalanceStrategy> strategies =
+                PluginLoader.load(LoadBalanceStrategy.class, CorePluginRegistry.INSTANCE, LoadBalanceStrategy::mark);
+        assertEquals(6, strategies.size());
+        assertTrue(CorePluginRegistry.INSTANCE.plugins(String.class).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMarkMismatch() {
+        // 注册标识与 mark() 不一致时启动失败
+        PluginLoader.load(LoadBalanceStrategy.class,
+                type -> Map.<String, Supplier<?>>of(ROUND_ROBIN_LOAD_BALANCE_STRATEGY, RandomLoadBalanceStrategy::new),
+                LoadBalanceStrategy::mark);
+    }
+
+}
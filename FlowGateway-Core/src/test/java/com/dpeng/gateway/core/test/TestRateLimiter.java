@@ -0,0 +1,234 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.enums.ResponseCode;
+import com.dpeng.gateway.common.exception.LimitedException;
+import com.dpeng.gateway.common.metrics.MetricRegistry;
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.config.pojo.ServiceDefinition;
+import com.dpeng.gateway.core.algorithm.ClusterRateLimiter;
+import com.dpeng.gateway.core.algorithm.KeyedRateLimiter;
+import com.dpeng.gateway.core.algorithm.LeakyBucketRateLimiter;
+import com.dpeng.gateway.core.algorithm.SlidingWindowRateLimiter;
+import com.dpeng.gateway.core.algorithm.TokenBucketRateLimiter;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.Filter;
+import com.dpeng.gateway.core.filter.FilterChain;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.filter.flow.RateLimiter;
+import com.dpeng.gateway.core.filter.flow.cluster.LocalQuotaCoordinator;
+import com.dpeng.gateway.core.filter.flow.cluster.QuotaCoordinator;
+import com.dpeng.gateway.core.helper.RequestHelper;
+import com.dpeng.gateway.core.helper.ResponseHelper;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class TestRateLimiter {
+
+    private static int consume(RateLimiter limiter, int times) {
+        int passed = 0;
+        for (int i = 0; i < times; i++) {
+            try {
+                assertEquals(FilterResult.CONTINUE, limiter.tryConsume(null));
+                passed++;
+            } catch (LimitedException ignored) {
+            }
+        }
+        return passed;
+    }
+
+    @Test
+    public void testTokenBucketBurst() {
+        // 默认创建时桶满, 允许 capacity 个突发请求
+        assertEquals(10, consume(new TokenBucketRateLimiter(10, 1), 20));
+        assertEquals(3, consume(new TokenBucketRateLimiter(10, 1, 3), 20));
+    }
+
+    @Test
+    public void testTokenBucketRefill() throws InterruptedException {
+        RateLimiter limiter = new TokenBucketRateLimiter(100, 1000, 0);
+        assertEquals(0, consume(limiter, 1));
+        // 按纳秒惰性补充, 不需要等到下一秒
+        Thread.sleep(20);
+        int passed = consume(limiter, 100);
+        assertTrue(passed >= 10 && passed < 100);
+    }
+
+    @Test
+    public void testSlidingWindow() throws InterruptedException {
+        // 第一次拒绝要加载异常相关的类, 可能超过一个窗口, 先在另一个限流器上触发
+        assertEquals(0, consume(new SlidingWindowRateLimiter(0, 100), 1));
+        RateLimiter limiter = new SlidingWindowRateLimiter(50, 100);
+        assertEquals(50, consume(limiter, 80));
+        // 两个窗口之后之前的请求都已滑出窗口
+        Thread.sleep(250);
+        assertEquals(50, consume(limiter, 80));
+    }
+
+    @Test
+    public void testKeyedLimit() {
+        String[] key = new String[1];
+        KeyedRateLimiter limiter = new KeyedRateLimiter(context -> key[0], 10, 60_000, 16, "test-key");
+        key[0] = "noisy";
+        assertEquals(10, consume(limiter, 100));
+        // 超限的键不影响其他键, 取不到键的请求不按键限流
+        key[0] = "quiet";
+        assertEquals(10, consume(limiter, 20));
+        key[0] = null;
+        assertEquals(20, consume(limiter, 20));
+        assertEquals(2, limiter.getHotKeyCount());
+    }
+
+    @Test
+    public void testKeyedLimitManyKeys() {
+        String[] key = new String[1];
+        KeyedRateLimiter limiter = new KeyedRateLimiter(context -> key[0], 100, 60_000, 16, "test-many-keys");
+        // 大量不同的键内存固定, 近似计数的误差远小于容量, 没有误拒绝, 也不会升级为热点键
+        int passed = 0;
+        for (int i = 0; i < 20_000; i++) {
+            key[0] = "client-" + i;
+            passed += consume(limiter, 2);
+        }
+        assertEquals(40_000, passed);
+        assertEquals(0, limiter.getHotKeyCount());
+    }
+
+    @Test
+    public void testClusterLimit() {
+        // 三个节点共享同一个协调器, 合计放行的请求数等于集群容量
+        QuotaCoordinator coordinator = new LocalQuotaCoordinator();
+        List<ClusterRateLimiter> nodes = List.of(
+                new ClusterRateLimiter(coordinator, "cluster-route", 100, 60_000, 10, () -> 3, "cluster-route"),
+                new ClusterRateLimiter(coordinator, "cluster-route", 100, 60_000, 10, () -> 3, "cluster-route"),
+                new ClusterRateLimiter(coordinator, "cluster-route", 100, 60_000, 10, () -> 3, "cluster-route"));
+        int passed = 0;
+        for (int i = 0; i < 100; i++) {
+            for (ClusterRateLimiter node : nodes) {
+                passed += consume(node, 1);
+            }
+        }
+        assertEquals(100, passed);
+        assertFalse(nodes.get(0).isDegraded());
+    }
+
+    @Test
+    public void testClusterLeaseExpiresWithWindow() throws InterruptedException {
+        int window = 300;
+        Thread.sleep(window - System.currentTimeMillis() % window + 10); // 从协调器窗口的开头开始
+        ClusterRateLimiter limiter = new ClusterRateLimiter(new LocalQuotaCoordinator(), "expire-route", 20, window, 10,
+                () -> 1, "expire-route");
+        // 用掉 6 个后低于半批, 续租后本地还有两批的剩余令牌
+        assertEquals(6, consume(limiter, 6));
+
+        // 进入下一个窗口后上一个窗口的剩余令牌作废, 只能用新窗口租到的令牌
+        Thread.sleep(window - System.currentTimeMillis() % window + 10);
+        assertEquals(20, consume(limiter, 100));
+    }
+
+    @Test
+    public void testClusterLimitDegrade() {
+        QuotaCoordinator unreachable = new LocalQuotaCoordinator() {
+            @Override
+            public CompletableFuture<Integer> acquire(String key, int permits, int limit, long windowMillis) {
+                return CompletableFuture.failedFuture(new IllegalStateException("unreachable"));
+            }
+        };
+        // 协调器不可达时按节点数平分集群容量
+        ClusterRateLimiter limiter = new ClusterRateLimiter(unreachable, "degrade-route", 100, 60_000, 10, () -> 4, "degrade-route");
+        assertEquals(25, consume(limiter, 100));
+        assertTrue(limiter.isDegraded());
+    }
+
+    @Test
+    public void testLeakyBucketDeadline() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        Channel channel = new NioSocketChannel();
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter());
+        group.register(channel).sync();
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+
+        // 每 50ms 流出一个请求, 最多排队 500ms
+        LeakyBucketRateLimiter limiter = new LeakyBucketRateLimiter(100, TimeUnit.MILLISECONDS.toNanos(50),
+                TimeUnit.MILLISECONDS.toNanos(500), "test-leaky");
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger passed = new AtomicInteger();
+        FilterChain chain = new FilterChain(List.of(
+                new TestFilter(1, context -> {
+                    try {
+                        return limiter.tryConsume(context);
+                    } catch (LimitedException e) {
+                        rejected.incrementAndGet();
+                        throw e;
+                    }
+                }),
+                new TestFilter(2, context -> {
+                    passed.incrementAndGet();
+                    context.setResponse(ResponseHelper.buildGatewayResponse(ResponseCode.SUCCESS));
+                    return FilterResult.COMPLETE;
+                })));
+        channel.eventLoop().execute(() -> {
+            for (int i = 0; i < 15; i++) {
+                FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user");
+                request.headers().set("X-Forwarded-For", "127.0.0.1");
+                RouteDefinition route = new RouteDefinition();
+                route.setId("leaky-route");
+                GatewayContext context = new GatewayContext(ctx, RequestHelper.buildGatewayRequest(new ServiceDefinition("user-service"), request, ctx),
+                        route, true);
+                context.setFilterChain(chain);
+                try {
+                    context.doFilter();
+                } catch (LimitedException ignored) { // 前置过滤器的异常由调用方写回响应
+                }
+            }
+        });
+
+        for (int i = 0; i < 50 && passed.get() + rejected.get() < 15; i++) {
+            Thread.sleep(100);
+        }
+        // 排队时间会超过 500ms 的请求到达时直接拒绝, 其余的按顺序放行
+        assertEquals(11, passed.get());
+        assertEquals(4, rejected.get());
+        assertEquals(rejected.get(), MetricRegistry.getInstance().counter("flow.leaky.rejected.test-leaky").get());
+        assertEquals(0, limiter.getQueueDepth());
+        channel.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private record TestFilter(int order, Function<GatewayContext, FilterResult> pre) implements Filter {
+
+        @Override
+        public FilterResult doPreFilter(GatewayContext context) {
+            return pre.apply(context);
+        }
+
+        @Override
+        public FilterResult doPostFilter(GatewayContext context) {
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public String mark() {
+            return "rate-" + order;
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+
+    }
+
+}
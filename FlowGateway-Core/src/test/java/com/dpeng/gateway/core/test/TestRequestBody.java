@@ -0,0 +1,69 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.core.request.RequestBody;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestRequestBody {
+
+    private final PooledByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    @Test
+    public void testSingleComponentNoCopy() {
+        ByteBuf content = allocator.directBuffer(4).writeInt(42);
+        RequestBody body = new RequestBody(content, allocator);
+        assertSame(content, body.content());
+
+        // 每次发送使用独立的视图, 重试时可以重复读取
+        ByteBuffer first = body.nioBuffer();
+        assertEquals(42, first.getInt());
+        assertEquals(42, body.nioBuffer().getInt());
+        assertTrue(first.isDirect());
+
+        body.release();
+        body.release(); // 重复释放无影响
+        assertEquals(0, content.refCnt());
+    }
+
+    @Test
+    public void testCompositeMergedOffHeap() {
+        CompositeByteBuf composite = allocator.compositeDirectBuffer();
+        composite.addComponent(true, allocator.directBuffer(4).writeInt(1));
+        composite.addComponent(true, Unpooled.buffer(4).writeInt(2));
+
+        RequestBody body = new RequestBody(composite, allocator);
+        assertEquals(0, composite.refCnt());
+        assertEquals(8, body.length());
+        ByteBuffer buffer = body.nioBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(1, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+
+        body.release();
+        assertTrue(body.isReleased());
+        assertEquals(0, body.content().refCnt());
+    }
+
+    @Test
+    public void testReleasedAfterUpstreamCompletes() {
+        ByteBuf content = allocator.directBuffer(4).writeInt(42);
+        RequestBody body = new RequestBody(content, allocator);
+        body.retainUpstream();
+
+        // 超时或降级时网关先写回响应, 下游请求仍在写出请求体, 此时不能释放
+        body.release();
+        assertEquals(1, content.refCnt());
+        assertEquals(42, body.nioBuffer().getInt());
+
+        body.releaseUpstream();
+        assertEquals(0, content.refCnt());
+    }
+
+}
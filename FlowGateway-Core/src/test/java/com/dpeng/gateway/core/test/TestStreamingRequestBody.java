@@ -0,0 +1,89 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.core.request.StreamingRequestBody;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import org.asynchttpclient.request.body.Body;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TestStreamingRequestBody {
+
+    private RouteDefinition.StreamingConfig streamingConfig(int high, int low) {
+        RouteDefinition.StreamingConfig config = new RouteDefinition.StreamingConfig();
+        config.setRequestEnabled(true);
+        config.setHighWaterMark(high);
+        config.setLowWaterMark(low);
+        return config;
+    }
+
+    @Test
+    public void testBackpressure() throws IOException {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        StreamingRequestBody body = new StreamingRequestBody(channel, -1, streamingConfig(8, 4));
+
+        ByteBuf first = Unpooled.copiedBuffer(new byte[6]);
+        ByteBuf second = Unpooled.copiedBuffer(new byte[6]);
+        body.offer(new DefaultHttpContent(first));
+        assertTrue(channel.config().isAutoRead());
+        body.offer(new DefaultHttpContent(second));
+        assertFalse(channel.config().isAutoRead()); // 超过高水位暂停读取
+
+        ByteBuf target = Unpooled.buffer(10, 10);
+        assertEquals(Body.BodyState.CONTINUE, body.transferTo(target));
+        assertEquals(0, first.refCnt()); // 写完的分片立即释放
+        assertTrue(channel.config().isAutoRead()); // 低于低水位恢复读取
+
+        body.offer(new DefaultLastHttpContent(Unpooled.copiedBuffer(new byte[2])));
+        target.clear();
+        assertEquals(Body.BodyState.STOP, body.transferTo(target));
+        assertEquals(4, target.readableBytes());
+        assertEquals(0, second.refCnt());
+    }
+
+    @Test
+    public void testSuspendWhenEmpty() throws IOException {
+        StreamingRequestBody body = new StreamingRequestBody(new EmbeddedChannel(), 3, streamingConfig(1024, 512));
+        assertEquals(3, body.getContentLength());
+        assertEquals(Body.BodyState.SUSPEND, body.transferTo(Unpooled.buffer(8)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testAbort() throws IOException {
+        StreamingRequestBody body = new StreamingRequestBody(new EmbeddedChannel(), -1, streamingConfig(1024, 512));
+        ByteBuf chunk = Unpooled.copiedBuffer(new byte[4]);
+        body.offer(new DefaultHttpContent(chunk));
+        body.abort(new IllegalStateException("client closed"));
+        assertEquals(0, chunk.refCnt());
+        body.transferTo(Unpooled.buffer(8));
+    }
+
+    @Test
+    public void testAbortWhileTransferring() throws IOException {
+        StreamingRequestBody body = new StreamingRequestBody(new EmbeddedChannel(), -1, streamingConfig(1024, 512));
+        ByteBuf writing = Unpooled.copiedBuffer(new byte[8]);
+        ByteBuf queued = Unpooled.copiedBuffer(new byte[8]);
+        body.offer(new DefaultHttpContent(writing));
+        body.offer(new DefaultHttpContent(queued));
+        assertEquals(Body.BodyState.CONTINUE, body.transferTo(Unpooled.buffer(4, 4)));
+
+        // 客户端事件循环上的中止只释放队列中的分片, 正在写出的分片由写出线程释放
+        body.abort(new IllegalStateException("client closed"));
+        assertEquals(0, queued.refCnt());
+        assertEquals(1, writing.refCnt());
+        try {
+            body.transferTo(Unpooled.buffer(4, 4));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, writing.refCnt());
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.config.pojo.RouteDefinition;
+import com.dpeng.gateway.config.pojo.ServiceDefinition;
+import com.dpeng.gateway.core.context.GatewayContext;
+import com.dpeng.gateway.core.filter.Filter;
+import com.dpeng.gateway.core.filter.FilterChain;
+import com.dpeng.gateway.core.filter.FilterResult;
+import com.dpeng.gateway.core.helper.RequestHelper;
+import com.dpeng.gateway.core.http.UpstreamResponseStatus;
+import com.dpeng.gateway.core.response.StreamingResponseHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import org.asynchttpclient.HttpResponseHeaders;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.asynchttpclient.uri.Uri;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.dpeng.gateway.core.helper.ContextHelper.STREAMING_RESPONSE;
+import static org.junit.Assert.*;
+
+public class TestStreamingResponseHandler {
+
+    private final EmbeddedChannel client = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+    private final EmbeddedChannel upstream = new EmbeddedChannel();
+
+    private final ByteBuf requestContent = Unpooled.copiedBuffer("request", StandardCharsets.UTF_8);
+
+    /**
+     * 构建执行到路由过滤器 (等待下游响应) 的上下文
+     */
+    private StreamingResponseHandler startExchange() {
+        ChannelHandlerContext ctx = client.pipeline().firstContext();
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/user", requestContent);
+        request.headers().set("X-Forwarded-For", "127.0.0.1");
+        RouteDefinition route = new RouteDefinition();
+        route.setId("streaming-response-route");
+        GatewayContext context = new GatewayContext(ctx, RequestHelper.buildGatewayRequest(new ServiceDefinition("user-service"), request, ctx),
+                route, true);
+        context.setFilterChain(new FilterChain(List.of(new RouteStub())));
+        context.doFilter();
+
+        StreamingResponseHandler handler = new StreamingResponseHandler(context);
+        handler.onConnectionPooled(upstream);
+        return handler;
+    }
+
+    private static void receiveHead(StreamingResponseHandler handler) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        handler.onStatusReceived(new UpstreamResponseStatus(Uri.create("http://127.0.0.1/user"), response, new EmbeddedChannel()));
+        handler.onHeadersReceived(new HttpResponseHeaders(response.headers()));
+    }
+
+    private static void receiveChunk(StreamingResponseHandler handler, String chunk, boolean last) {
+        handler.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.copiedBuffer(chunk, StandardCharsets.UTF_8), last));
+    }
+
+    private String readChunk() {
+        HttpContent content = client.readOutbound();
+        assertNotNull(content);
+        assertFalse(content instanceof LastHttpContent);
+        try {
+            return content.content().toString(StandardCharsets.UTF_8);
+        } finally {
+            content.release();
+        }
+    }
+
+    @Test
+    public void testForwardChunks() {
+        StreamingResponseHandler handler = startExchange();
+        receiveHead(handler);
+        // 收到响应头即执行后置过滤器并写回, 没有长度时按 chunked 转发
+        HttpResponse head = client.readOutbound();
+        assertEquals(HttpResponseStatus.OK, head.status());
+        assertTrue(HttpUtil.isTransferEncodingChunked(head));
+        assertSame(handler, client.attr(STREAMING_RESPONSE).get());
+
+        receiveChunk(handler, "hello ", false);
+        assertEquals("hello ", readChunk());
+        receiveChunk(handler, "world", true);
+        assertEquals("world", readChunk());
+        assertTrue(upstream.config().isAutoRead());
+
+        handler.onCompleted();
+        LastHttpContent last = client.readOutbound();
+        assertNotNull(last);
+        assertNull(client.readOutbound());
+        assertNull(client.attr(STREAMING_RESPONSE).get());
+        assertEquals(0, requestContent.refCnt()); // 下游响应读完后释放请求体
+        assertTrue(client.isOpen());
+    }
+
+    @Test
+    public void testClientClosedMidStream() throws Exception {
+        StreamingResponseHandler handler = startExchange();
+        receiveHead(handler);
+        client.<HttpResponse>readOutbound();
+        receiveChunk(handler, "partial", false);
+        assertEquals("partial", readChunk());
+
+        // 客户端断开时关闭下游连接, 下游请求随之失败
+        client.attr(STREAMING_RESPONSE).get().onClientClosed();
+        assertFalse(upstream.isOpen());
+        handler.onThrowable(new ClosedChannelException());
+        assertNull(client.attr(STREAMING_RESPONSE).get());
+        assertEquals(0, requestContent.refCnt());
+    }
+
+    @Test
+    public void testUpstreamErrorAfterHead() throws IOException {
+        StreamingResponseHandler handler = startExchange();
+        receiveHead(handler);
+        client.<HttpResponse>readOutbound();
+        receiveChunk(handler, "partial", false);
+        assertEquals("partial", readChunk());
+
+        // 响应头已发出, 下游出错时只能关闭客户端连接, 不写出最后一个分片
+        handler.onThrowable(new IOException("upstream reset"));
+        assertFalse(client.isOpen());
+        assertNull(client.readOutbound());
+        assertNull(client.attr(STREAMING_RESPONSE).get());
+        assertEquals(0, requestContent.refCnt());
+    }
+
+    @Test
+    public void testUpstreamErrorBeforeHead() {
+        StreamingResponseHandler handler = startExchange();
+        // 还没有收到响应头时不写回任何内容, 由调用方按普通失败处理
+        handler.onThrowable(new IOException("connect refused"));
+        assertFalse(handler.isHeadersReceived());
+        assertTrue(client.isOpen());
+        assertNull(client.readOutbound());
+        requestContent.release();
+    }
+
+    /**
+     * 模拟路由过滤器: 前置阶段等待下游响应
+     */
+    private static class RouteStub implements Filter {
+
+        @Override
+        public FilterResult doPreFilter(GatewayContext context) {
+            return FilterResult.SUSPEND;
+        }
+
+        @Override
+        public FilterResult doPostFilter(GatewayContext context) {
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public String mark() {
+            return "route-stub";
+        }
+
+        @Override
+        public int getOrder() {
+            return 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.dpeng.gateway.core.test;
+
+import com.dpeng.gateway.common.enums.TransportEnum;
+import com.dpeng.gateway.common.util.TransportUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比不同传输层在回环地址上的请求-响应往返吞吐。
+ * io_uring 需要额外引入 netty-incubator-transport-io_uring 依赖, 不可用时会回退到 epoll/nio, 实际使用的传输层见启动日志。
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final int PAYLOAD_SIZE = 256;
+
+    @Param({"NIO", "EPOLL", "IO_URING"})
+    public TransportEnum transport;
+
+    private final ByteBuf payload = Unpooled.unreleasableBuffer(
+            Unpooled.directBuffer(PAYLOAD_SIZE).writeZero(PAYLOAD_SIZE));
+
+    private EventLoopGroup group;
+
+    private Channel serverChannel;
+
+    private Channel clientChannel;
+
+    private volatile CompletableFuture<Void> pending;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        TransportEnum actual = TransportUtil.resolve(transport);
+        log.info("benchmark transport {} resolved to {}", transport, actual); // 不可用时回退到其他传输层
+        group = TransportUtil.newEventLoopGroup(actual, 2, "benchmark");
+
+        serverChannel = new ServerBootstrap()
+                .group(group, group)
+                .channel(TransportUtil.serverChannelClass(actual))
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInboundHandlerAdapter() { // 原样回写
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ctx.write(msg);
+                    }
+
+                    @Override
+                    public void channelReadComplete(ChannelHandlerContext ctx) {
+                        ctx.flush();
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        clientChannel = new Bootstrap()
+                .group(group)
+                .channel(TransportUtil.socketChannelClass(actual))
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInboundHandlerAdapter() {
+                    private int received;
+
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ByteBuf buf = (ByteBuf) msg;
+                        received += buf.readableBytes();
+                        buf.release();
+                        if (received >= PAYLOAD_SIZE) {
+                            received -= PAYLOAD_SIZE;
+                            pending.complete(null);
+                        }
+                    }
+                })
+                .connect(serverChannel.localAddress()).sync().channel();
+    }
+
+    @Benchmark
+    public void roundTrip() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        pending = future;
+        clientChannel.writeAndFlush(payload.duplicate());
+        future.join();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        clientChannel.close().sync();
+        serverChannel.close().sync();
+        group.shutdownGracefully().sync();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TransportBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
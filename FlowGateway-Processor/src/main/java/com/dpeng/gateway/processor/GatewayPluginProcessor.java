@@ -0,0 +1,186 @@
+package com.dpeng.gateway.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * 处理 @GatewayPlugin 注解, 编译时校验插件并生成:
+ * 插件注册表 (编译参数 gateway.plugin.registry 指定类名, 未指定时不生成), 启动时直接 new 出内置插件, 不需要扫描;
+ * 以扩展接口全名命名的 META-INF/services 文件, 供外部插件 jar 通过 ServiceLoader 加载。
+ * 插件不是 public 的非抽象类、没有 public 无参构造方法、没有实现声明的扩展接口或标识重复时编译失败。
+ */
+@SupportedAnnotationTypes(GatewayPluginProcessor.ANNOTATION)
+@SupportedOptions(GatewayPluginProcessor.REGISTRY_OPTION)
+public class GatewayPluginProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "com.dpeng.gateway.common.plugin.GatewayPlugin";
+
+    static final String REGISTRY_OPTION = "gateway.plugin.registry";
+
+    // 扩展接口的二进制名 -> 插件标识 -> 插件类
+    private final Map<String, Map<String, TypeElement>> plugins = new TreeMap<>();
+
+    private boolean registryGenerated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFiles();
+            return false;
+        }
+        boolean found = false;
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                found |= collect(element, annotation);
+            }
+        }
+        if (found) {
+            if (registryGenerated) {
+                error(null, "@GatewayPlugin classes generated in later rounds are not supported");
+            } else {
+                writeRegistry();
+                registryGenerated = true;
+            }
+        }
+        return true;
+    }
+
+    private boolean collect(Element element, TypeElement annotation) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@GatewayPlugin can only be used on classes");
+            return false;
+        }
+        TypeElement plugin = (TypeElement) element;
+        Set<Modifier> modifiers = plugin.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)
+                || (plugin.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC))) {
+            error(plugin, "plugin must be a public, non-abstract, top-level or static class");
+            return false;
+        }
+        boolean hasPublicNoArgConstructor = ElementFilter.constructorsIn(plugin.getEnclosedElements()).stream()
+                .anyMatch(c -> c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC));
+        if (!hasPublicNoArgConstructor) {
+            error(plugin, "plugin must have a public no-arg constructor");
+            return false;
+        }
+
+        AnnotationMirror mirror = plugin.getAnnotationMirrors().stream()
+                .filter(m -> m.getAnnotationType().asElement().equals(annotation))
+                .findFirst().orElseThrow();
+        TypeMirror type = null;
+        String name = null;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            String key = entry.getKey().getSimpleName().toString();
+            if (key.equals("value")) {
+                type = (TypeMirror) entry.getValue().getValue();
+            } else if (key.equals("name")) {
+                name = (String) entry.getValue().getValue();
+            }
+        }
+        if (!(type instanceof DeclaredType declaredType)) {
+            error(plugin, "@GatewayPlugin value must be the plugin interface");
+            return false;
+        }
+        TypeElement typeElement = (TypeElement) declaredType.asElement();
+        if (!processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(plugin.asType()),
+                processingEnv.getTypeUtils().erasure(type))) {
+            error(plugin, "plugin does not implement " + typeElement.getQualifiedName());
+            return false;
+        }
+        if (name == null || name.isBlank()) {
+            error(plugin, "@GatewayPlugin name must not be empty");
+            return false;
+        }
+        String typeName = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+        TypeElement previous = plugins.computeIfAbsent(typeName, k -> new TreeMap<>()).putIfAbsent(name, plugin);
+        if (previous != null && !previous.equals(plugin)) {
+            error(plugin, "duplicate " + typeElement.getSimpleName() + " name \"" + name + "\", already used by "
+                    + previous.getQualifiedName());
+            return false;
+        }
+        return true;
+    }
+
+    private void writeRegistry() {
+        String registry = processingEnv.getOptions().get(REGISTRY_OPTION);
+        if (registry == null || registry.isBlank()) {
+            return; // 外部插件只生成 META-INF/services 文件
+        }
+        int dot = registry.lastIndexOf('.');
+        String packageName = dot < 0 ? "" : registry.substring(0, dot);
+        String simpleName = registry.substring(dot + 1);
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * 由 GatewayPluginProcessor 根据 @GatewayPlugin 生成, 不要手动修改\n */\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements com.dpeng.gateway.common.plugin.PluginRegistry {\n\n")
+                .append("    public static final ").append(simpleName).append(" INSTANCE = new ").append(simpleName).append("();\n\n")
+                .append("    private ").append(simpleName).append("() {\n    }\n\n")
+                .append("    @Override\n")
+                .append("    public java.util.Map<String, java.util.function.Supplier<?>> plugins(Class<?> type) {\n")
+                .append("        java.util.Map<String, java.util.function.Supplier<?>> plugins = new java.util.LinkedHashMap<>();\n")
+                .append("        switch (type.getName()) {\n");
+        plugins.forEach((type, named) -> {
+            source.append("            case \"").append(type).append("\" -> {\n");
+            named.forEach((name, plugin) -> source.append("                plugins.put(\"").append(escape(name)).append("\", ")
+                    .append(plugin.getQualifiedName()).append("::new);\n"));
+            source.append("            }\n");
+        });
+        source.append("            default -> {\n            }\n")
+                .append("        }\n")
+                .append("        return plugins;\n")
+                .append("    }\n\n")
+                .append("}\n");
+        try (Writer writer = processingEnv.getFiler().createSourceFile(registry).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            error(null, "failed to write plugin registry " + registry + ": " + e.getMessage());
+        }
+    }
+
+    private void writeServiceFiles() {
+        plugins.forEach((type, named) -> {
+            Set<String> implementations = new TreeSet<>();
+            named.values().forEach(plugin -> implementations.add(processingEnv.getElementUtils().getBinaryName(plugin).toString()));
+            try {
+                FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                        "META-INF/services/" + type);
+                try (Writer writer = file.openWriter()) {
+                    for (String implementation : implementations) {
+                        writer.write(implementation);
+                        writer.write('\n');
+                    }
+                }
+            } catch (IOException e) {
+                error(null, "failed to write service file for " + type + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
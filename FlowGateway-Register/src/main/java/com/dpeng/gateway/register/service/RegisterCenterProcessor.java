@@ -18,4 +18,9 @@ public interface RegisterCenterProcessor {
      */
     void subscribeServiceChange(RegisterCenterListener listener);
 
+    /**
+     * 订阅网关自身的健康实例变化, 集群限流按节点数降级时使用
+     */
+    void subscribeGatewayInstances(RegisterCenterListener listener);
+
 }
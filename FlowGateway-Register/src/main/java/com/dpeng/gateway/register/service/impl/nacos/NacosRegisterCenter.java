@@ -111,6 +111,40 @@ public class NacosRegisterCenter implements RegisterCenterProcessor {
     }
 
 
+    /**
+     * 订阅网关自身的实例变化, 只通知健康且启用的实例, 订阅时 Nacos 会先推送一次当前实例
+     */
+    @SneakyThrows(NacosException.class)
+    @Override
+    public void subscribeGatewayInstances(RegisterCenterListener listener) {
+        String group = config.getRegisterCenter().getNacos().getGroup();
+        ServiceDefinition serviceDefinition = new ServiceDefinition(config.getName());
+        namingService.subscribe(config.getName(), group, event -> {
+            if (event instanceof NamingEvent namingEvent) {
+                List<Instance> instances = namingEvent.getInstances() == null ? List.of() : namingEvent.getInstances().stream()
+                        .filter(instance -> instance != null && instance.isHealthy() && instance.isEnabled())
+                        .toList();
+                listener.onInstancesChange(serviceDefinition, toServiceInstances(instances));
+            }
+        });
+    }
+
+    private static Set<ServiceInstance> toServiceInstances(List<Instance> instances) {
+        Set<ServiceInstance> serviceInstances = new HashSet<>();
+        if (CollectionUtils.isNotEmpty(instances)) {
+            for (Instance instance : instances) {
+                if (instance == null) continue;
+
+                ServiceInstance serviceInstance = new ServiceInstance();
+                BeanUtil.copyProperties(instance, serviceInstance);
+                BeanUtil.fillBeanWithMap(instance.getMetadata(), serviceInstance, true);
+
+                serviceInstances.add(serviceInstance);
+            }
+        }
+        return serviceInstances;
+    }
+
     /**
      * 订阅新的服务,并发起一次信号,监听器会监听新服务的实例,并做出处理
      */
@@ -159,19 +193,7 @@ public class NacosRegisterCenter implements RegisterCenterProcessor {
 
                 //获取所有实例信息，并转换为 ServiceInstance。
                 List<Instance> allInstances = namingService.getAllInstances(serviceName, group);
-                Set<ServiceInstance> newInstances = new HashSet<>();
-
-                if (CollectionUtils.isNotEmpty(allInstances)) {
-                    for (Instance instance : allInstances) {
-                        if (instance == null) continue;
-
-                        ServiceInstance newInstance = new ServiceInstance();
-                        BeanUtil.copyProperties(instance, newInstance);
-                        BeanUtil.fillBeanWithMap(instance.getMetadata(), newInstance, true);
-
-                        newInstances.add(newInstance);
-                    }
-                }
+                Set<ServiceInstance> newInstances = toServiceInstances(allInstances);
 
                 //调用我们自己的订阅监听器
                 listener.onInstancesChange(serviceDefinition, newInstances);